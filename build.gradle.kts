@@ -9,11 +9,70 @@ repositories {
     mavenCentral()
 }
 
+// The lexer has an optional Vector API path, VectorRuns, which is only taken
+// at runtime when the incubator module is enabled. It lives in its own source
+// set under src/vector, so only it is compiled against the module.
+val vector by sourceSets.creating
+
+sourceSets.main {
+    compileClasspath += vector.output
+    runtimeClasspath += vector.output
+}
+
+sourceSets.test {
+    compileClasspath += vector.output
+    runtimeClasspath += vector.output
+}
+
+// JMH benchmarks live in their own source set under src/jmh and are run with
+// the jmh task, e.g. gradle jmh --args="LexerBenchmark -p size=1024".
+val jmh by sourceSets.creating {
+    compileClasspath += sourceSets.main.get().output + vector.output
+    runtimeClasspath += sourceSets.main.get().output + vector.output
+}
+
 dependencies {
     testImplementation(platform("org.junit:junit-bom:5.10.0"))
     testImplementation("org.junit.jupiter:junit-jupiter")
+
+    "jmhImplementation"("org.openjdk.jmh:jmh-core:1.37")
+    "jmhAnnotationProcessor"("org.openjdk.jmh:jmh-generator-annprocess:1.37")
+}
+
+tasks.named<JavaCompile>("compileVectorJava") {
+    options.compilerArgs.addAll(listOf("--add-modules", "jdk.incubator.vector"))
 }
 
+tasks.jar {
+    from(vector.output)
+}
+
+// The tests run without the incubator module, covering the scalar lexer, and
+// the lexer tests run again with it, covering VectorRuns.
 tasks.test {
     useJUnitPlatform()
-}
\ No newline at end of file
+}
+
+val vectorTest by tasks.registering(Test::class) {
+    description = "Runs the lexer tests with the Vector API enabled."
+    group = "verification"
+    testClassesDirs = sourceSets.test.get().output.classesDirs
+    classpath = sourceSets.test.get().runtimeClasspath
+    useJUnitPlatform()
+    filter {
+        includeTestsMatching("plc.project.LexerTests")
+    }
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+}
+
+tasks.check {
+    dependsOn(vectorTest)
+}
+
+tasks.register<JavaExec>("jmh") {
+    group = "benchmark"
+    description = "Runs the JMH benchmarks, reporting tokens/s and bytes/token."
+    classpath = jmh.runtimeClasspath
+    mainClass.set("plc.project.Benchmarks")
+    jvmArgs("--add-modules", "jdk.incubator.vector")
+}
@@ -0,0 +1,52 @@
+package plc.project;
+
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+import java.util.Collection;
+import java.util.stream.Collectors;
+
+/**
+ * Entry point of the {@code jmh} Gradle task. Runs the benchmarks selected by
+ * the (ordinary JMH) command line options with the GC profiler, then prints
+ * tokens per second and allocated bytes per token for every benchmark which
+ * counts its tokens in a {@code tokens} counter.
+ */
+public final class Benchmarks {
+
+    private Benchmarks() {}
+
+    public static void main(String[] args) throws CommandLineOptionException, RunnerException {
+        Options options = new OptionsBuilder()
+                .parent(new CommandLineOptions(args))
+                .addProfiler(GCProfiler.class)
+                .build();
+        Collection<RunResult> results = new Runner(options).run();
+        System.out.println();
+        System.out.printf("%-32s %-28s %16s %10s%n", "Benchmark", "Params", "tokens/s", "B/token");
+        for (RunResult result : results) {
+            Result<?> tokens = result.getSecondaryResults().get("tokens");
+            Result<?> allocation = result.getSecondaryResults().get("gc.alloc.rate");
+            if (tokens == null || allocation == null) {
+                continue;
+            }
+            BenchmarkParams params = result.getParams();
+            String benchmark = params.getBenchmark().replace("plc.project.", "");
+            String values = params.getParamsKeys().stream()
+                    .map(key -> key + "=" + params.getParam(key))
+                    .collect(Collectors.joining(" "));
+            // gc.alloc.rate is in MB/sec, tokens is in ops/s.
+            double bytes = allocation.getScore() * 1024 * 1024 / tokens.getScore();
+            System.out.printf("%-32s %-28s %16.0f %10.1f%n", benchmark, values, tokens.getScore(), bytes);
+        }
+    }
+
+}
@@ -0,0 +1,276 @@
+package plc.project;
+
+import java.util.Random;
+
+/**
+ * Generates deterministic, lexically valid sources of a given size for the
+ * benchmarks. Each shape stresses a different part of the {@link Lexer}.
+ */
+public final class Corpus {
+
+    public enum Shape {
+        /**
+         * Declarations and calls, mostly identifiers and keywords.
+         */
+        IDENTIFIERS,
+        /**
+         * Integer and decimal literals, with and without signs.
+         */
+        NUMBERS,
+        /**
+         * String and character literals with escapes.
+         */
+        LITERALS,
+        /**
+         * Expressions dense with one and two character operators.
+         */
+        OPERATORS,
+        /**
+         * Declarations and calls indented by long runs of spaces and tabs,
+         * for the lexer's bulk whitespace scan (see {@link VectorRuns}).
+         */
+        WHITESPACE,
+        /**
+         * Declarations and calls of names 21 to 77 chars long, for the
+         * lexer's bulk identifier scan.
+         */
+        LONG_IDENTIFIERS
+    }
+
+    private static final String[] KEYWORDS = {"LET", "DEF", "IF", "ELSE", "WHILE", "RETURN", "END", "DO"};
+    private static final String[] ESCAPES = {"\\b", "\\n", "\\r", "\\t", "\\'", "\\\"", "\\\\"};
+    private static final String[] OPERATORS = {"+", "-", "*", "/", "%", "<", "<=", ">", ">=", "==", "!=", "&&", "||", "="};
+
+    private Corpus() {}
+
+    /**
+     * Returns a source of whole lines, at most {@code size} chars long.
+     */
+    public static String generate(Shape shape, int size) {
+        Random random = new Random(size ^ shape.ordinal());
+        StringBuilder builder = new StringBuilder(size + 128);
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            line.setLength(0);
+            switch (shape) {
+                case IDENTIFIERS:
+                    identifiers(random, line);
+                    break;
+                case NUMBERS:
+                    numbers(random, line);
+                    break;
+                case LITERALS:
+                    literals(random, line);
+                    break;
+                case OPERATORS:
+                    operators(random, line);
+                    break;
+                case WHITESPACE:
+                    whitespace(random, line);
+                    break;
+                case LONG_IDENTIFIERS:
+                    longIdentifiers(random, line);
+                    break;
+                default:
+                    throw new AssertionError(shape);
+            }
+            line.append('\n');
+            if (builder.length() + line.length() > size) {
+                return builder.toString();
+            }
+            builder.append(line);
+        }
+    }
+
+    private static final String[] BINARY = {"&&", "||", "<", "<=", ">", ">=", "==", "!=", "+", "-", "*", "/"};
+
+    /**
+     * Returns a method of at most {@code size} chars whose statements are
+     * assignments of long binary expressions, for the parser benchmarks.
+     */
+    public static String expressions(int size) {
+        Random random = new Random(size);
+        StringBuilder builder = new StringBuilder(size + 128).append("DEF main() DO\n");
+        StringBuilder line = new StringBuilder();
+        while (true) {
+            line.setLength(0);
+            line.append("    ");
+            name(random, line);
+            line.append(" = ");
+            binary(random, line, 2);
+            line.append(";\n");
+            if (builder.length() + line.length() + 4 > size) {
+                return builder.append("END\n").toString();
+            }
+            builder.append(line);
+        }
+    }
+
+    private static final String[] BLOCKS = {"IF ", "WHILE ", "FOR (i = 0; "};
+
+    /**
+     * Returns at most {@code size} chars of small methods with nested
+     * blocks, for the parallel parser benchmarks.
+     */
+    public static String methods(int size) {
+        Random random = new Random(size);
+        StringBuilder builder = new StringBuilder(size + 128);
+        StringBuilder method = new StringBuilder();
+        while (true) {
+            method.setLength(0);
+            method(random, method);
+            if (builder.length() + method.length() > size) {
+                return builder.toString();
+            }
+            builder.append(method);
+        }
+    }
+
+    /**
+     * Returns a library of {@code count} methods like those of
+     * {@link #methods(int)}, for the lazy parser benchmarks.
+     */
+    public static String library(int count) {
+        Random random = new Random(count);
+        StringBuilder builder = new StringBuilder(count * 256);
+        for (int i = 0; i < count; i++) {
+            method(random, builder);
+        }
+        return builder.toString();
+    }
+
+    private static void method(Random random, StringBuilder method) {
+        method.append("DEF ");
+        name(random, method);
+        method.append("(x) DO\n");
+        for (int i = 1 + random.nextInt(4); i > 0; i--) {
+            int block = random.nextInt(BLOCKS.length);
+            method.append("    ").append(BLOCKS[block]);
+            binary(random, method, 1);
+            method.append(block == 2 ? "; i = i + 1)\n" : " DO\n");
+            for (int j = 1 + random.nextInt(3); j > 0; j--) {
+                method.append("        ");
+                name(random, method);
+                method.append(" = ");
+                binary(random, method, 2);
+                method.append(";\n");
+            }
+            method.append("    END\n");
+        }
+        method.append("END\n");
+    }
+
+    private static void binary(Random random, StringBuilder line, int depth) {
+        for (int i = 1 + random.nextInt(6); i > 0; i--) {
+            if (depth > 0 && random.nextInt(4) == 0) {
+                line.append('(');
+                binary(random, line, depth - 1);
+                line.append(')');
+            } else if (random.nextBoolean()) {
+                name(random, line);
+            } else {
+                line.append(random.nextInt(1000));
+            }
+            if (i > 1) {
+                line.append(' ').append(BINARY[random.nextInt(BINARY.length)]).append(' ');
+            }
+        }
+    }
+
+    private static void identifiers(Random random, StringBuilder line) {
+        line.append(KEYWORDS[random.nextInt(KEYWORDS.length)]).append(' ');
+        name(random, line);
+        line.append(" = ");
+        name(random, line);
+        line.append('.');
+        name(random, line);
+        line.append('(');
+        for (int i = random.nextInt(4); i > 0; i--) {
+            name(random, line);
+            line.append(i > 1 ? ", " : "");
+        }
+        line.append(");");
+    }
+
+    private static void numbers(Random random, StringBuilder line) {
+        line.append("LET values = [");
+        for (int i = 0; i < 8; i++) {
+            line.append(i > 0 ? ", " : "");
+            line.append(random.nextBoolean() ? "-" : random.nextInt(8) == 0 ? "+" : "");
+            line.append(random.nextInt(8) == 0 ? 0 : (random.nextLong() >>> 1) >> random.nextInt(63));
+            if (random.nextBoolean()) {
+                line.append('.').append(random.nextInt(1_000_000));
+            }
+        }
+        line.append("];");
+    }
+
+    private static void literals(Random random, StringBuilder line) {
+        line.append("print(\"");
+        for (int i = random.nextInt(24); i > 0; i--) {
+            line.append(random.nextInt(6) == 0 ? ESCAPES[random.nextInt(ESCAPES.length)] : (char) ('a' + random.nextInt(26)));
+        }
+        line.append("\", ");
+        for (int i = 0; i < 4; i++) {
+            line.append('\'');
+            line.append(random.nextInt(3) == 0 ? ESCAPES[random.nextInt(ESCAPES.length)] : (char) ('a' + random.nextInt(26)));
+            line.append(i < 3 ? "', " : "'");
+        }
+        line.append(");");
+    }
+
+    private static void operators(Random random, StringBuilder line) {
+        int open = 0;
+        line.append((char) ('a' + random.nextInt(26)));
+        for (int i = 0; i < 12; i++) {
+            line.append(OPERATORS[random.nextInt(OPERATORS.length)]);
+            if (random.nextInt(4) == 0) {
+                line.append(random.nextBoolean() ? "(" : "(!");
+                open++;
+            }
+            line.append((char) ('a' + random.nextInt(26)));
+            if (open > 0 && random.nextInt(3) == 0) {
+                line.append(')');
+                open--;
+            }
+        }
+        for (; open > 0; open--) {
+            line.append(')');
+        }
+        line.append(';');
+    }
+
+    private static void whitespace(Random random, StringBuilder line) {
+        for (int i = 16 + random.nextInt(64); i > 0; i--) {
+            line.append(random.nextInt(4) == 0 ? '\t' : ' ');
+        }
+        identifiers(random, line);
+        line.append(" ".repeat(random.nextInt(24)));
+    }
+
+    private static void longIdentifiers(Random random, StringBuilder line) {
+        line.append(KEYWORDS[random.nextInt(KEYWORDS.length)]).append(' ');
+        longName(random, line);
+        line.append(" = ");
+        longName(random, line);
+        line.append('(');
+        longName(random, line);
+        line.append(");");
+    }
+
+    private static void longName(Random random, StringBuilder line) {
+        for (int i = 0; i < 6; i++) {
+            line.append(i > 0 ? "_" : "");
+            name(random, line);
+        }
+    }
+
+    private static void name(Random random, StringBuilder line) {
+        line.append((char) ('a' + random.nextInt(26)));
+        for (int i = 2 + random.nextInt(10); i > 0; i--) {
+            int c = random.nextInt(40);
+            line.append(c < 26 ? (char) ('a' + c) : c < 32 ? (char) ('A' + c - 26) : c < 38 ? (char) ('0' + c - 32) : c == 38 ? '_' : '-');
+        }
+    }
+
+}
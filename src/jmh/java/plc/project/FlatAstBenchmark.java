@@ -0,0 +1,87 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+import java.util.function.Supplier;
+
+/**
+ * A full traversal of a large AST (see {@link Corpus#methods(int)}) as
+ * objects with {@link VisitorBenchmark.Counter}, against the same walk over
+ * its {@link FlatAst}. The setup prints the heap each form retains, the AST
+ * without its source and tokens and the flat form without the AST.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class FlatAstBenchmark {
+
+    @Param({"1048576", "16777216"})
+    public int size;
+
+    private Ast.Source ast;
+    private FlatAst flat;
+
+    @Setup
+    public void setup() {
+        String source = Corpus.methods(size);
+        ast = retained("Ast", () -> new Parser(new Lexer(source).lexCompact()).parseSource());
+        flat = retained("FlatAst", () -> FlatAst.of(ast));
+        System.out.printf("FlatAst arrays: %d bytes for %d nodes%n", flat.bytes(), flat.size());
+    }
+
+    @Benchmark
+    public int traverseAst() {
+        return new VisitorBenchmark.Counter().visit(ast);
+    }
+
+    @Benchmark
+    public int traverseFlat() {
+        return count(flat, 0);
+    }
+
+    @Benchmark
+    public Ast.Source materialize() {
+        return flat.toAst();
+    }
+
+    private static int count(FlatAst flat, int node) {
+        int count = 1;
+        for (int i = flat.getChildCount(node) - 1; i >= 0; i--) {
+            int child = flat.getChild(node, i);
+            if (child != FlatAst.NONE) {
+                count += count(flat, child);
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Builds a value, printing roughly how much more heap is in use after
+     * it than before, with garbage collected around it.
+     */
+    private static <T> T retained(String name, Supplier<T> build) {
+        Runtime runtime = Runtime.getRuntime();
+        System.gc();
+        long before = runtime.totalMemory() - runtime.freeMemory();
+        T value = build.get();
+        System.gc();
+        long after = runtime.totalMemory() - runtime.freeMemory();
+        System.out.printf("%s: about %d bytes retained%n", name, after - before);
+        return value;
+    }
+
+}
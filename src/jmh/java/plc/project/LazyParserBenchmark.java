@@ -0,0 +1,75 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * {@link Parser#parseLazily(TokenBuffer)} against {@link Parser#parseSource()}
+ * on a library of methods (see {@link Corpus#library(int)}) of which only
+ * every {@code stride}th one has its body used. The tokens are lexed up
+ * front with a new symbol table per invocation, so that the bodies which
+ * are parsed intern their names as they would in a real compilation; the
+ * GC profiler run by {@link Benchmarks} gives the memory saved.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class LazyParserBenchmark {
+
+    @Param({"10000"})
+    public int methods;
+
+    @Param({"100"})
+    public int stride;
+
+    private String source;
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        source = Corpus.library(methods);
+    }
+
+    @Setup(Level.Invocation)
+    public void lex() {
+        buffer = new Lexer(source).lexCompact();
+    }
+
+    @Benchmark
+    public Ast.Source parse(LexerBenchmark.Tokens counter) {
+        Ast.Source ast = new Parser(buffer).parseSource();
+        use(ast);
+        counter.tokens += buffer.size();
+        return ast;
+    }
+
+    @Benchmark
+    public Ast.Source parseLazily(LexerBenchmark.Tokens counter) {
+        Ast.Source ast = Parser.parseLazily(buffer);
+        use(ast);
+        counter.tokens += buffer.size();
+        return ast;
+    }
+
+    private void use(Ast.Source ast) {
+        for (int i = 0; i < ast.getMethods().size(); i += stride) {
+            ast.getMethods().get(i).getStatements();
+        }
+    }
+
+}
@@ -0,0 +1,76 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.AuxCounters;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexer throughput over generated corpora from 1 KB to 50 MB. Each benchmark
+ * counts the tokens it produces, which {@link Benchmarks} combines with the
+ * GC profiler into tokens per second and allocated bytes per token.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class LexerBenchmark {
+
+    @Param({"IDENTIFIERS", "NUMBERS", "LITERALS", "OPERATORS"})
+    public Corpus.Shape shape;
+
+    @Param({"1024", "1048576", "52428800"})
+    public int size;
+
+    private String source;
+
+    @Setup
+    public void setup() {
+        source = Corpus.generate(shape, size);
+    }
+
+    @Benchmark
+    public List<Token> lex(Tokens counter) {
+        List<Token> tokens = new Lexer(source).lex();
+        counter.tokens += tokens.size();
+        return tokens;
+    }
+
+    @Benchmark
+    public TokenBuffer lexCompact(Tokens counter) {
+        TokenBuffer tokens = new Lexer(source).lexCompact();
+        counter.tokens += tokens.size();
+        return tokens;
+    }
+
+    /**
+     * Counts lexed tokens, reported by JMH as a secondary rate.
+     */
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+
+    }
+
+}
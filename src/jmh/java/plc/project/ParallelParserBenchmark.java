@@ -0,0 +1,72 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The scaling of {@link Parser#parseParallel(TokenBuffer, ForkJoinPool)}
+ * with the number of threads, on a large source of small methods (see
+ * {@link Corpus#methods(int)}), against {@link Parser#parseSource()}. The
+ * tokens are lexed up front with a new symbol table per invocation, so
+ * that the pre-scan interns every name as it would in a real compilation.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ParallelParserBenchmark {
+
+    @Param({"1", "2", "4", "8"})
+    public int threads;
+
+    private String source;
+    private ForkJoinPool pool;
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        source = Corpus.methods(16 << 20);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @Setup(Level.Invocation)
+    public void lex() {
+        buffer = new Lexer(source).lexCompact();
+    }
+
+    @TearDown
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Ast.Source parse(LexerBenchmark.Tokens counter) {
+        Ast.Source ast = new Parser(buffer).parseSource();
+        counter.tokens += buffer.size();
+        return ast;
+    }
+
+    @Benchmark
+    public Ast.Source parseParallel(LexerBenchmark.Tokens counter) {
+        Ast.Source ast = Parser.parseParallel(buffer, pool);
+        counter.tokens += buffer.size();
+        return ast;
+    }
+
+}
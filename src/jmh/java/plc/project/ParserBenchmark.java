@@ -0,0 +1,47 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Parser throughput on operator-dense sources (see
+ * {@link Corpus#expressions(int)}), from tokens which are lexed up front so
+ * only parsing is measured.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class ParserBenchmark {
+
+    @Param({"1024", "1048576"})
+    public int size;
+
+    private TokenBuffer buffer;
+
+    @Setup
+    public void setup() {
+        buffer = new Lexer(Corpus.expressions(size)).lexCompact();
+    }
+
+    @Benchmark
+    public Ast.Source parse(LexerBenchmark.Tokens counter) {
+        Ast.Source source = new Parser(buffer).parseSource();
+        counter.tokens += buffer.size();
+        return source;
+    }
+
+}
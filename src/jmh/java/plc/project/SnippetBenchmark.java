@@ -0,0 +1,86 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Lexing many small snippets, one line of a generated corpus each, with a
+ * new {@link Lexer} per snippet versus a reused one. Run through
+ * {@link Benchmarks}, the allocated bytes per token show what reuse saves:
+ * a reused lexer lexing into its own buffer should allocate next to nothing,
+ * and one producing {@link Token}s only the tokens and their list.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"--add-modules", "jdk.incubator.vector"})
+@State(Scope.Thread)
+public class SnippetBenchmark {
+
+    @Param({"IDENTIFIERS", "OPERATORS"})
+    public Corpus.Shape shape;
+
+    private String[] snippets;
+    private int next = 0;
+    private final Lexer lexer = new Lexer("");
+
+    @Setup
+    public void setup() {
+        snippets = Corpus.generate(shape, 1 << 16).split("\n");
+    }
+
+    private String snippet() {
+        String snippet = snippets[next];
+        next = next + 1 == snippets.length ? 0 : next + 1;
+        return snippet;
+    }
+
+    @Benchmark
+    public TokenBuffer lexCompact(LexerBenchmark.Tokens counter) {
+        TokenBuffer tokens = new Lexer(snippet()).lexCompact();
+        counter.tokens += tokens.size();
+        return tokens;
+    }
+
+    @Benchmark
+    public TokenBuffer resetCompact(LexerBenchmark.Tokens counter) {
+        TokenBuffer tokens = lexer.reset(snippet()).lexCompact();
+        counter.tokens += tokens.size();
+        return tokens;
+    }
+
+    @Benchmark
+    public TokenBuffer localCompact(LexerBenchmark.Tokens counter) {
+        TokenBuffer tokens = Lexer.local(snippet()).lexCompact();
+        counter.tokens += tokens.size();
+        return tokens;
+    }
+
+    @Benchmark
+    public List<Token> lex(LexerBenchmark.Tokens counter) {
+        List<Token> tokens = new Lexer(snippet()).lex();
+        counter.tokens += tokens.size();
+        return tokens;
+    }
+
+    @Benchmark
+    public List<Token> resetLex(LexerBenchmark.Tokens counter) {
+        List<Token> tokens = lexer.reset(snippet()).lex();
+        counter.tokens += tokens.size();
+        return tokens;
+    }
+
+}
@@ -0,0 +1,61 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The lexer over byte input ({@link ByteSequence}), whose long whitespace and
+ * identifier runs it scans a vector at a time with {@link VectorRuns} when
+ * the incubator module is enabled. {@link Vector} runs with the module and
+ * {@link Scalar} without it, on the same corpora, so the two paths can be
+ * compared directly; a {@link String} input always takes the scalar path,
+ * as in {@link LexerBenchmark}.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@State(Scope.Benchmark)
+public abstract class VectorRunsBenchmark {
+
+    @Param({"WHITESPACE", "LONG_IDENTIFIERS", "IDENTIFIERS"})
+    public Corpus.Shape shape;
+
+    @Param({"1048576", "52428800"})
+    public int size;
+
+    private ByteSequence source;
+
+    @Setup
+    public void setup() {
+        byte[] bytes = Corpus.generate(shape, size).getBytes(StandardCharsets.US_ASCII);
+        source = new ByteSequence(ByteBuffer.wrap(bytes));
+    }
+
+    @Benchmark
+    public TokenBuffer lexCompact(LexerBenchmark.Tokens counter) {
+        TokenBuffer tokens = new Lexer(source).lexCompact();
+        counter.tokens += tokens.size();
+        return tokens;
+    }
+
+    @Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+    public static class Vector extends VectorRunsBenchmark {}
+
+    @Fork(value = 1, jvmArgsAppend = {"-Xmx4g"})
+    public static class Scalar extends VectorRunsBenchmark {}
+
+}
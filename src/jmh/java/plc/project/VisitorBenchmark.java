@@ -0,0 +1,190 @@
+package plc.project;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * The cost of a full traversal of a large AST (see {@link Corpus#methods(int)})
+ * with {@link Ast.Visitor#visit(Ast)} dispatching through
+ * {@link Ast#accept(Ast.Visitor)}, against the chain of {@code instanceof}
+ * tests it used to run. Both visitors only count the nodes.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(value = 1, jvmArgsAppend = {"-Xmx4g", "--add-modules", "jdk.incubator.vector"})
+@State(Scope.Benchmark)
+public class VisitorBenchmark {
+
+    @Param({"1048576", "16777216"})
+    public int size;
+
+    private Ast.Source ast;
+
+    @Setup
+    public void setup() {
+        ast = new Parser(new Lexer(Corpus.methods(size)).lexCompact()).parseSource();
+    }
+
+    @Benchmark
+    public int accept() {
+        return new Counter().visit(ast);
+    }
+
+    @Benchmark
+    public int instanceOf() {
+        return new Chain().visit(ast);
+    }
+
+    /**
+     * Counts the nodes of a tree.
+     */
+    static class Counter implements Ast.Visitor<Integer> {
+
+        private int visit(List<? extends Ast> nodes) {
+            int count = 0;
+            for (Ast node : nodes) {
+                count += visit(node);
+            }
+            return count;
+        }
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            return 1 + visit(ast.getFields()) + visit(ast.getMethods());
+        }
+
+        @Override
+        public Integer visit(Ast.Field ast) {
+            return 1 + ast.getValue().map(this::visit).orElse(0);
+        }
+
+        @Override
+        public Integer visit(Ast.Method ast) {
+            return 1 + visit(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Expression ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Declaration ast) {
+            return 1 + ast.getValue().map(this::visit).orElse(0);
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Assignment ast) {
+            return 1 + visit(ast.getReceiver()) + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.If ast) {
+            return 1 + visit(ast.getCondition()) + visit(ast.getThenStatements()) + visit(ast.getElseStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.For ast) {
+            // The initialization, condition and increment may be left out.
+            return 1 + (ast.getInitialization() != null ? visit(ast.getInitialization()) : 0)
+                    + (ast.getCondition() != null ? visit(ast.getCondition()) : 0)
+                    + (ast.getIncrement() != null ? visit(ast.getIncrement()) : 0) + visit(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.While ast) {
+            return 1 + visit(ast.getCondition()) + visit(ast.getStatements());
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Return ast) {
+            return 1 + visit(ast.getValue());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Literal ast) {
+            return 1;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Group ast) {
+            return 1 + visit(ast.getExpression());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Binary ast) {
+            return 1 + visit(ast.getLeft()) + visit(ast.getRight());
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Access ast) {
+            return 1 + ast.getReceiver().map(this::visit).orElse(0);
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Function ast) {
+            return 1 + ast.getReceiver().map(this::visit).orElse(0) + visit(ast.getArguments());
+        }
+
+    }
+
+    /**
+     * Counts the nodes of a tree, dispatching as {@link Ast.Visitor} did
+     * before {@link Ast#accept(Ast.Visitor)}.
+     */
+    private static final class Chain extends Counter {
+
+        @Override
+        public Integer visit(Ast ast) {
+            if (ast instanceof Ast.Source) {
+                return visit((Ast.Source) ast);
+            } else if (ast instanceof Ast.Field) {
+                return visit((Ast.Field) ast);
+            } else if (ast instanceof Ast.Method) {
+                return visit((Ast.Method) ast);
+            } else if (ast instanceof Ast.Statement.Expression) {
+                return visit((Ast.Statement.Expression) ast);
+            } else if (ast instanceof Ast.Statement.Declaration) {
+                return visit((Ast.Statement.Declaration) ast);
+            } else if (ast instanceof Ast.Statement.Assignment) {
+                return visit((Ast.Statement.Assignment) ast);
+            } else if (ast instanceof Ast.Statement.If) {
+                return visit((Ast.Statement.If) ast);
+            } else if (ast instanceof Ast.Statement.For) {
+                return visit((Ast.Statement.For) ast);
+            } else if (ast instanceof Ast.Statement.While) {
+                return visit((Ast.Statement.While) ast);
+            } else if (ast instanceof Ast.Statement.Return) {
+                return visit((Ast.Statement.Return) ast);
+            } else if (ast instanceof Ast.Expression.Literal) {
+                return visit((Ast.Expression.Literal) ast);
+            } else if (ast instanceof Ast.Expression.Group) {
+                return visit((Ast.Expression.Group) ast);
+            } else if (ast instanceof Ast.Expression.Binary) {
+                return visit((Ast.Expression.Binary) ast);
+            } else if (ast instanceof Ast.Expression.Access) {
+                return visit((Ast.Expression.Access) ast);
+            } else if (ast instanceof Ast.Expression.Function) {
+                return visit((Ast.Expression.Function) ast);
+            } else {
+                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
+            }
+        }
+
+    }
+
+}
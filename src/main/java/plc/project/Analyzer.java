@@ -374,13 +374,60 @@ public final class Analyzer implements Ast.Visitor<Void> {
 
 class ParseException extends RuntimeException {
     private final int index;
+    private LineIndex lines;
 
     public ParseException(String message, int index) {
-        super(message + " at index " + index);
+        this(message, index, null);
+    }
+
+    /**
+     * Creates an exception whose line and column are looked up in the given
+     * index when they are requested.
+     */
+    public ParseException(String message, int index, LineIndex lines) {
+        this(message, index, lines, true);
+    }
+
+    /**
+     * Creates an exception which, unless {@code stackTrace} is set, does not
+     * capture a stack trace. Recovering lexers and parsers record every
+     * error rather than throwing it out to a caller, so a trace would only
+     * make error-heavy input slow.
+     */
+    ParseException(String message, int index, LineIndex lines, boolean stackTrace) {
+        super(message + " at index " + index, null, false, stackTrace);
         this.index = index;
+        this.lines = lines;
     }
 
     public int getIndex() {
         return index;
     }
+
+    /**
+     * Returns the 1-based line of the index, or -1 if it is unknown.
+     */
+    public int getLine() {
+        return lines != null && index >= 0 ? lines.getLine(index) : -1;
+    }
+
+    /**
+     * Returns the 1-based column of the index, or -1 if it is unknown.
+     */
+    public int getColumn() {
+        return lines != null && index >= 0 ? lines.getColumn(index) : -1;
+    }
+
+    LineIndex getLines() {
+        return lines;
+    }
+
+    /**
+     * Replaces the line index, for an exception thrown while lexing part of
+     * a source whose full index is only known afterwards.
+     */
+    ParseException locate(LineIndex lines) {
+        this.lines = lines;
+        return this;
+    }
 }
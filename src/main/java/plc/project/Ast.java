@@ -4,6 +4,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Objects;
 import java.util.Optional;
+import java.util.function.Supplier;
 
 /**
  * See each project assignment specification for specific notes on the AST classes
@@ -11,6 +12,12 @@ import java.util.Optional;
  */
 public abstract class Ast {
 
+    /**
+     * Calls the {@code visit} overload of the visitor for this node, so that
+     * {@link Visitor#visit(Ast)} dispatches with a single virtual call.
+     */
+    public abstract <T> T accept(Visitor<T> visitor);
+
     public static final class Source extends Ast {
 
         private final List<Field> fields;
@@ -29,6 +36,11 @@ public abstract class Ast {
             return methods;
         }
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Source &&
@@ -36,6 +48,11 @@ public abstract class Ast {
                     methods.equals(((Source) obj).methods);
         }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(fields, methods);
+        }
+
         @Override
         public String toString() {
             return "Ast.Source{" +
@@ -93,6 +110,11 @@ public abstract class Ast {
         }
 
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Field &&
@@ -103,6 +125,11 @@ public abstract class Ast {
                     Objects.equals(variable, ((Field) obj).variable);
         }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, typeName, constant, value);
+        }
+
         @Override
         public String toString() {
             return "Ast.Field{" +
@@ -122,10 +149,33 @@ public abstract class Ast {
         private final List<String> parameters;
         private final List<String> parameterTypeNames;
         private final Optional<String> returnTypeName;
-        private final List<Statement> statements;
+        private List<Statement> statements;
+        // Parses the statements on first use, for a method parsed lazily.
+        private Supplier<List<Statement>> body;
         private Environment.Function function = null;
 
         public Method(String name, List<String> parameters, List<Statement> statements) {
+            this(name, parameters, statements, null);
+        }
+
+        /**
+         * Creates a method whose statements are only parsed, by {@code body},
+         * when {@link #getStatements()} is first called. Any exception it
+         * throws is thrown from there, and again on the next call.
+         * Comparing or hashing the method parses it too, so that it equals
+         * the same method parsed eagerly, but printing it does not, showing
+         * the body instead of the statements until then.
+         *
+         * The parse is not synchronized and its result is not safely
+         * published, so like the parser (see
+         * {@link Parser#parseLazily(TokenBuffer)}) a lazily parsed method
+         * must not be used from several threads at once.
+         */
+        public Method(String name, List<String> parameters, Supplier<List<Statement>> body) {
+            this(name, parameters, null, body);
+        }
+
+        private Method(String name, List<String> parameters, List<Statement> statements, Supplier<List<Statement>> body) {
             // If this is the main method with no parameters, default return type to Integer
             Optional<String> returnType = (name.equals("main") && parameters.isEmpty())
                     ? Optional.of("Integer")
@@ -136,6 +186,7 @@ public abstract class Ast {
             this.parameterTypeNames = new ArrayList<>();
             this.returnTypeName = returnType;
             this.statements = statements;
+            this.body = body;
 
             for (int i = 0; i < parameters.size(); i++) {
                 parameterTypeNames.add("Any");
@@ -167,6 +218,10 @@ public abstract class Ast {
         }
 
         public List<Statement> getStatements() {
+            if (body != null) {
+                statements = body.get();
+                body = null;
+            }
             return statements;
         }
 
@@ -181,6 +236,11 @@ public abstract class Ast {
             this.function = function;
         }
 
+        @Override
+        public <T> T accept(Visitor<T> visitor) {
+            return visitor.visit(this);
+        }
+
         @Override
         public boolean equals(Object obj) {
             return obj instanceof Method &&
@@ -188,10 +248,15 @@ public abstract class Ast {
                     parameters.equals(((Method) obj).parameters) &&
                     parameterTypeNames.equals(((Method) obj).parameterTypeNames) &&
                     returnTypeName.equals(((Method) obj).returnTypeName) &&
-                    statements.equals(((Method) obj).statements) &&
+                    getStatements().equals(((Method) obj).getStatements()) &&
                     Objects.equals(function, ((Method) obj).function);
         }
 
+        @Override
+        public int hashCode() {
+            return Objects.hash(name, parameters, parameterTypeNames, returnTypeName, getStatements());
+        }
+
         @Override
         public String toString() {
             return "Method{" +
@@ -199,7 +264,7 @@ public abstract class Ast {
                     ", parameters=" + parameters +
                     ", parameterTypeNames=" + parameterTypeNames +
                     ", returnTypeName='" + returnTypeName + '\'' +
-                    ", statements=" + statements +
+                    ", statements=" + (body != null ? body : statements) +
                     ", function=" + function +
                     '}';
         }
@@ -220,12 +285,22 @@ public abstract class Ast {
                 return expression;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Ast.Statement.Expression &&
                         expression.equals(((Ast.Statement.Expression) obj).expression);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(expression);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.Expression{" +
@@ -275,6 +350,11 @@ public abstract class Ast {
                 this.variable = variable;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Declaration &&
@@ -284,6 +364,11 @@ public abstract class Ast {
                         Objects.equals(variable, ((Declaration) obj).variable);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(name, typeName, value);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.Declaration{" +
@@ -314,6 +399,11 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Assignment &&
@@ -321,6 +411,11 @@ public abstract class Ast {
                         value.equals(((Assignment) obj).value);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(receiver, value);
+            }
+
             @Override
             public final String toString() {
                 return "Ast.Statement.Assignment{" +
@@ -355,6 +450,11 @@ public abstract class Ast {
                 return elseStatements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof If &&
@@ -363,6 +463,11 @@ public abstract class Ast {
                         elseStatements.equals(((If) obj).elseStatements);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(condition, thenStatements, elseStatements);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.If{" +
@@ -404,6 +509,11 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
 
@@ -429,11 +539,16 @@ public abstract class Ast {
                 }
 
                 return  init &&
-                        condition.equals(myFor.condition) &&
+                        Objects.equals(condition, myFor.condition) &&
                         incr &&
                         statements.equals(myFor.statements);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(initialization, condition, increment, statements);
+            }
+
             @Override
             public String toString() {
                 return "For{" +
@@ -464,6 +579,11 @@ public abstract class Ast {
                 return statements;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof While &&
@@ -471,6 +591,11 @@ public abstract class Ast {
                         statements.equals(((While) obj).statements);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(condition, statements);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.While{" +
@@ -493,12 +618,22 @@ public abstract class Ast {
                 return value;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
                 return obj instanceof Return &&
                         value.equals(((Return) obj).value);
             }
 
+            @Override
+            public int hashCode() {
+                return Objects.hash(value);
+            }
+
             @Override
             public String toString() {
                 return "Ast.Statement.Return{" +
@@ -510,23 +645,75 @@ public abstract class Ast {
 
     }
 
+    /**
+     * Expressions do not change once created, apart from what the
+     * {@link Analyzer} sets, so each caches its structural hash, which leaves
+     * that out, when it is created. Equality then fails fast on a different
+     * hash and succeeds at once on the same node, as for the shared nodes of
+     * an {@link ExpressionPool}. Those nodes cannot be analyzed, since setting
+     * their type, variable or function would change their equality while
+     * they are keys of the pool.
+     */
     public static abstract class Expression extends Ast {
 
+        private boolean shared = false;
+
         public abstract Environment.Type getType();
 
+        /**
+         * Returns whether the node is the canonical instance of an
+         * {@link ExpressionPool}.
+         */
+        public boolean isShared() {
+            return shared;
+        }
+
+        void share() {
+            shared = true;
+        }
+
+        void checkUnshared() {
+            if (shared) {
+                throw new IllegalStateException("The expression is shared by an ExpressionPool and cannot be analyzed.");
+            }
+        }
+
         public static final class Literal extends Ast.Expression {
 
             private final Object literal;
+            private Environment.PlcObject object;
+            private final int hash;
             private Environment.Type type = null;
 
             public Literal(Object literal) {
+                this(literal, null);
+            }
+
+            /**
+             * Creates a literal which evaluates to the given object, usually
+             * the one shared by equal literals through a {@link ConstantPool}.
+             */
+            public Literal(Object literal, Environment.PlcObject object) {
                 this.literal = literal;
+                this.object = object;
+                this.hash = Objects.hashCode(literal);
             }
 
             public Object getLiteral() {
                 return literal;
             }
 
+            /**
+             * Returns the runtime object of the literal, created on first use
+             * if it was not given one.
+             */
+            public Environment.PlcObject getObject() {
+                if (object == null) {
+                    object = literal == null ? Environment.NIL : Environment.create(literal);
+                }
+                return object;
+            }
+
             @Override
             public Environment.Type getType() {
                 if (type == null) {
@@ -536,16 +723,28 @@ public abstract class Ast {
             }
 
             public void setType(Environment.Type type) {
+                checkUnshared();
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Literal &&
+                return obj == this || obj instanceof Literal &&
+                        hash == ((Literal) obj).hash &&
                         Objects.equals(literal, ((Literal) obj).literal) &&
                         Objects.equals(type, ((Literal) obj).type);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expression.Literal{" +
@@ -559,10 +758,12 @@ public abstract class Ast {
         public static final class Group extends Ast.Expression {
 
             private final Ast.Expression expression;
+            private final int hash;
             private Environment.Type type = null;
 
             public Group(Ast.Expression expression) {
                 this.expression = expression;
+                this.hash = Objects.hash(expression);
             }
 
             public Ast.Expression getExpression() {
@@ -578,16 +779,28 @@ public abstract class Ast {
             }
 
             public void setType(Environment.Type type) {
+                checkUnshared();
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Group &&
+                return obj == this || obj instanceof Group &&
+                        hash == ((Group) obj).hash &&
                         expression.equals(((Group) obj).expression) &&
                         Objects.equals(type, ((Group) obj).type);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expression.Group{" +
@@ -603,12 +816,14 @@ public abstract class Ast {
             private final String operator;
             private final Ast.Expression left;
             private final Ast.Expression right;
+            private final int hash;
             private Environment.Type type = null;
 
             public Binary(String operator, Ast.Expression left, Ast.Expression right) {
                 this.operator = operator;
                 this.left = left;
                 this.right = right;
+                this.hash = Objects.hash(operator, left, right);
             }
 
             public String getOperator() {
@@ -632,18 +847,30 @@ public abstract class Ast {
             }
 
             public void setType(Environment.Type type) {
+                checkUnshared();
                 this.type = type;
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Binary &&
+                return obj == this || obj instanceof Binary &&
+                        hash == ((Binary) obj).hash &&
                         operator.equals(((Binary) obj).operator) &&
                         left.equals(((Binary) obj).left) &&
                         right.equals(((Binary) obj).right) &&
                         Objects.equals(type, ((Binary) obj).type);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expression.Binary{" +
@@ -661,11 +888,13 @@ public abstract class Ast {
 
             private final Optional<Ast.Expression> receiver;
             private final String name;
+            private final int hash;
             private Environment.Variable variable = null;
 
             public Access(Optional<Ast.Expression> receiver, String name) {
                 this.receiver = receiver;
                 this.name = name;
+                this.hash = Objects.hash(receiver, name);
             }
 
             public Optional<Ast.Expression> getReceiver() {
@@ -684,6 +913,7 @@ public abstract class Ast {
             }
 
             public void setVariable(Environment.Variable variable) {
+                checkUnshared();
                 this.variable = variable;
             }
 
@@ -692,14 +922,25 @@ public abstract class Ast {
                 return getVariable().getType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Access &&
+                return obj == this || obj instanceof Access &&
+                        hash == ((Access) obj).hash &&
                         receiver.equals(((Access) obj).receiver) &&
                         name.equals(((Access) obj).name) &&
                         Objects.equals(variable, ((Access) obj).variable);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expression.Access{" +
@@ -716,12 +957,15 @@ public abstract class Ast {
             private final Optional<Ast.Expression> receiver;
             private final String name;
             private final List<Ast.Expression> arguments;
+            private final int hash;
             private Environment.Function function = null;
 
             public Function(Optional<Ast.Expression> receiver, String name, List<Ast.Expression> arguments) {
                 this.receiver = receiver;
                 this.name = name;
-                this.arguments = arguments;
+                // A copy, so that the list cannot change under the hash.
+                this.arguments = List.copyOf(arguments);
+                this.hash = Objects.hash(receiver, name, this.arguments);
             }
 
             public Optional<Ast.Expression> getReceiver() {
@@ -744,6 +988,7 @@ public abstract class Ast {
             }
 
             public void setFunction(Environment.Function function) {
+                checkUnshared();
                 this.function = function;
             }
 
@@ -752,15 +997,26 @@ public abstract class Ast {
                 return getFunction().getReturnType();
             }
 
+            @Override
+            public <T> T accept(Visitor<T> visitor) {
+                return visitor.visit(this);
+            }
+
             @Override
             public boolean equals(Object obj) {
-                return obj instanceof Function &&
+                return obj == this || obj instanceof Function &&
+                        hash == ((Function) obj).hash &&
                         receiver.equals(((Function) obj).receiver) &&
                         name.equals(((Function) obj).name) &&
                         arguments.equals(((Function) obj).arguments) &&
                         Objects.equals(function, ((Function) obj).function);
             }
 
+            @Override
+            public int hashCode() {
+                return hash;
+            }
+
             @Override
             public String toString() {
                 return "Ast.Expression.Function{" +
@@ -778,39 +1034,7 @@ public abstract class Ast {
     public interface Visitor<T> {
 
         default T visit(Ast ast) {
-            if (ast instanceof Ast.Source) {
-                return visit((Ast.Source) ast);
-            } else if (ast instanceof Ast.Field) {
-                return visit((Ast.Field) ast);
-            } else if (ast instanceof Ast.Method) {
-                return visit((Ast.Method) ast);
-            } else if (ast instanceof Ast.Statement.Expression) {
-                return visit((Ast.Statement.Expression) ast);
-            } else if (ast instanceof Ast.Statement.Declaration) {
-                return visit((Ast.Statement.Declaration) ast);
-            } else if (ast instanceof Ast.Statement.Assignment) {
-                return visit((Ast.Statement.Assignment) ast);
-            } else if (ast instanceof Ast.Statement.If) {
-                return visit((Ast.Statement.If) ast);
-            } else if (ast instanceof Ast.Statement.For) {
-                return visit((Ast.Statement.For) ast);
-            } else if (ast instanceof Ast.Statement.While) {
-                return visit((Ast.Statement.While) ast);
-            } else if (ast instanceof Ast.Statement.Return) {
-                return visit((Ast.Statement.Return) ast);
-            } else if (ast instanceof Ast.Expression.Literal) {
-                return visit((Ast.Expression.Literal) ast);
-            } else if (ast instanceof Ast.Expression.Group) {
-                return visit((Ast.Expression.Group) ast);
-            } else if (ast instanceof Ast.Expression.Binary) {
-                return visit((Ast.Expression.Binary) ast);
-            } else if (ast instanceof Ast.Expression.Access) {
-                return visit((Ast.Expression.Access) ast);
-            } else if (ast instanceof Ast.Expression.Function) {
-                return visit((Ast.Expression.Function) ast);
-            } else {
-                throw new AssertionError("Unimplemented AST type: " + ast.getClass().getName() + ".");
-            }
+            return ast.accept(this);
         }
 
         T visit(Ast.Source ast);
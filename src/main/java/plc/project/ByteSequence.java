@@ -0,0 +1,85 @@
+package plc.project;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * A {@link CharSequence} view over ASCII or UTF-8 encoded bytes, such as a
+ * memory-mapped source file, so the {@link Lexer} can read a file without
+ * first decoding it into a second copy on the heap.
+ *
+ * Each byte is exposed as one char, which is exact for ASCII. Multi-byte UTF-8
+ * sequences are only legal inside string literals, and are decoded when the
+ * literal is materialized through {@link #toString()}. Indices are therefore
+ * byte offsets into the underlying buffer.
+ */
+public final class ByteSequence implements CharSequence {
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int length;
+
+    public ByteSequence(ByteBuffer buffer) {
+        this(buffer, buffer.position(), buffer.remaining());
+    }
+
+    private ByteSequence(ByteBuffer buffer, int offset, int length) {
+        this.buffer = buffer;
+        this.offset = offset;
+        this.length = length;
+    }
+
+    /**
+     * Maps the file read-only into memory. The mapping stays valid after the
+     * channel is closed and is released once the sequence is unreachable.
+     */
+    public static ByteSequence map(Path path) throws IOException {
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.READ)) {
+            return new ByteSequence(channel.map(FileChannel.MapMode.READ_ONLY, 0, channel.size()));
+        }
+    }
+
+    ByteBuffer getBuffer() {
+        return buffer;
+    }
+
+    /**
+     * Returns the position in {@link #getBuffer()} of index 0.
+     */
+    int getOffset() {
+        return offset;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+        }
+        return (char) (buffer.get(offset + index) & 0xFF);
+    }
+
+    @Override
+    public ByteSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range: [" + start + ", " + end + "), Length: " + length);
+        }
+        return new ByteSequence(buffer, offset + start, end - start);
+    }
+
+    @Override
+    public String toString() {
+        byte[] bytes = new byte[length];
+        buffer.get(offset, bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+}
@@ -0,0 +1,44 @@
+package plc.project;
+
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Deduplicates literal values for one compilation. Each distinct value is
+ * stored once, with the {@link Environment.PlcObject} the interpreter
+ * evaluates it to, so that equal literals anywhere in the {@link Ast} share
+ * one payload and evaluating a literal allocates nothing. Values are equal
+ * as by {@link Object#equals(Object)}, so {@code 1.0} and {@code 1.00} are
+ * kept apart, as are a character and a string of it.
+ *
+ * The objects have empty scopes and are never changed by the interpreter,
+ * so sharing them is safe. A pool is thread-safe, since the tables of the
+ * parallel parser share the pool of their parent (see
+ * {@link SymbolTable#getConstants()}).
+ */
+public final class ConstantPool {
+
+    private final Map<Object, Environment.PlcObject> constants = new HashMap<>();
+
+    /**
+     * Returns the canonical object of a value, whose own value is the
+     * canonical instance of it. The object of {@code null} is
+     * {@link Environment#NIL}.
+     */
+    public synchronized Environment.PlcObject constant(Object value) {
+        if (value == null) {
+            return Environment.NIL;
+        }
+        Environment.PlcObject constant = constants.get(value);
+        if (constant == null) {
+            constant = Environment.create(value);
+            constants.put(value, constant);
+        }
+        return constant;
+    }
+
+    public synchronized int size() {
+        return constants.size();
+    }
+
+}
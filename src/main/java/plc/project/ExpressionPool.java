@@ -0,0 +1,411 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Hash-conses expressions, so that structurally equal expression subtrees
+ * are one shared instance. Expressions are interned bottom-up, so the
+ * children of a canonical expression are canonical too, and looking one up
+ * only compares the cached hash and the identity of its children (see
+ * {@link Ast.Expression}). Canonical expressions can then be compared and
+ * used as cache keys in constant time.
+ *
+ * The pool copies the nodes it keeps, leaving the tree it is given as it
+ * was, and marks them as shared (see {@link Ast.Expression#isShared()}).
+ * Since the {@link Analyzer} sets variables, functions and types on the
+ * nodes in place, which would change their equality while they are keys of
+ * the pool, analyzing a shared node throws an
+ * {@link IllegalStateException}: intern a tree for syntactic work such as
+ * memoization and deduplication, and analyze the original. Like a
+ * {@link SymbolTable}, a pool is not thread-safe.
+ */
+public final class ExpressionPool {
+
+    private final Map<Ast.Expression, Ast.Expression> expressions = new HashMap<>();
+    private final Interner interner = new Interner();
+
+    /**
+     * Returns the number of distinct expressions in the pool.
+     */
+    public int size() {
+        return expressions.size();
+    }
+
+    /**
+     * Returns the canonical instance of an expression, interning its
+     * subexpressions first.
+     */
+    public Ast.Expression intern(Ast.Expression expression) {
+        if (expression.isShared()) {
+            return expression;
+        }
+        return (Ast.Expression) interner.intern(expression);
+    }
+
+    /**
+     * Returns a copy of the source whose expressions are interned, sharing
+     * every repeated expression subtree. A lazily parsed method (see
+     * {@link Parser#parseLazily(TokenBuffer)}) is parsed for it.
+     */
+    public Ast.Source intern(Ast.Source source) {
+        return (Ast.Source) interner.intern(source);
+    }
+
+    public Ast.Expression.Literal literal(Object literal) {
+        return canonical(new Ast.Expression.Literal(literal));
+    }
+
+    public Ast.Expression.Group group(Ast.Expression expression) {
+        return canonical(new Ast.Expression.Group(intern(expression)));
+    }
+
+    public Ast.Expression.Binary binary(String operator, Ast.Expression left, Ast.Expression right) {
+        return canonical(new Ast.Expression.Binary(operator, intern(left), intern(right)));
+    }
+
+    public Ast.Expression.Access access(Optional<Ast.Expression> receiver, String name) {
+        return canonical(new Ast.Expression.Access(receiver.map(this::intern), name));
+    }
+
+    public Ast.Expression.Function function(Optional<Ast.Expression> receiver, String name, List<Ast.Expression> arguments) {
+        return canonical(new Ast.Expression.Function(receiver.map(this::intern), name, interned(arguments)));
+    }
+
+    /**
+     * Returns the canonical instance of a new expression whose children are
+     * already canonical, which becomes it if there is none yet.
+     */
+    @SuppressWarnings("unchecked")
+    private <T extends Ast.Expression> T canonical(T expression) {
+        Ast.Expression canonical = expressions.putIfAbsent(expression, expression);
+        if (canonical == null) {
+            expression.share();
+            return expression;
+        }
+        return (T) canonical;
+    }
+
+    private List<Ast.Expression> interned(List<Ast.Expression> expressions) {
+        List<Ast.Expression> interned = new ArrayList<>(expressions.size());
+        for (Ast.Expression expression : expressions) {
+            interned.add(intern(expression));
+        }
+        return interned;
+    }
+
+    /**
+     * Rebuilds each node with interned expressions, bottom-up. Instead of
+     * recursing, the nodes are kept on an explicit stack, so that nesting is
+     * bounded only by memory: a node is pushed back above its children (see
+     * {@link Children}), and once they are rebuilt, visiting it pops them
+     * from a second stack and pushes the node rebuilt from them. An absent
+     * child is pushed as null, and is rebuilt as null, as a shared expression
+     * is as itself.
+     */
+    private final class Interner implements Ast.Visitor<Ast> {
+
+        private final Children children = new Children();
+        private Ast[] nodes = new Ast[16];
+        private boolean[] expanded = new boolean[16];
+        private int nodeCount = 0;
+        private Ast[] rebuilt = new Ast[16];
+        private int rebuiltCount = 0;
+
+        private Ast intern(Ast ast) {
+            int nodeBase = nodeCount;
+            int rebuiltBase = rebuiltCount;
+            try {
+                push(ast, false);
+                while (nodeCount > nodeBase) {
+                    nodeCount--;
+                    Ast node = nodes[nodeCount];
+                    nodes[nodeCount] = null;
+                    if (node == null || node instanceof Ast.Expression && ((Ast.Expression) node).isShared()) {
+                        rebuild(node);
+                    } else if (expanded[nodeCount]) {
+                        rebuild(visit(node));
+                    } else {
+                        push(node, true);
+                        int top = nodeCount;
+                        node.accept(children);
+                        reverse(top, nodeCount);
+                    }
+                }
+                return pop();
+            } finally {
+                // Only left over when an exception is thrown.
+                if (nodeCount != nodeBase || rebuiltCount != rebuiltBase) {
+                    Arrays.fill(nodes, nodeBase, nodeCount, null);
+                    Arrays.fill(rebuilt, rebuiltBase, rebuiltCount, null);
+                    nodeCount = nodeBase;
+                    rebuiltCount = rebuiltBase;
+                }
+            }
+        }
+
+        private void push(Ast ast, boolean expand) {
+            if (nodeCount == nodes.length) {
+                nodes = Arrays.copyOf(nodes, nodeCount * 2);
+                expanded = Arrays.copyOf(expanded, nodeCount * 2);
+            }
+            expanded[nodeCount] = expand;
+            nodes[nodeCount++] = ast;
+        }
+
+        private void reverse(int from, int to) {
+            for (to--; from < to; from++, to--) {
+                Ast ast = nodes[from];
+                nodes[from] = nodes[to];
+                nodes[to] = ast;
+            }
+        }
+
+        private void rebuild(Ast ast) {
+            if (rebuiltCount == rebuilt.length) {
+                rebuilt = Arrays.copyOf(rebuilt, rebuiltCount * 2);
+            }
+            rebuilt[rebuiltCount++] = ast;
+        }
+
+        private Ast pop() {
+            Ast ast = rebuilt[--rebuiltCount];
+            rebuilt[rebuiltCount] = null;
+            return ast;
+        }
+
+        private Ast.Expression expression() {
+            return (Ast.Expression) pop();
+        }
+
+        private Ast.Statement statement() {
+            return (Ast.Statement) pop();
+        }
+
+        /**
+         * Pops the last {@code count} rebuilt nodes, in the order they were
+         * pushed.
+         */
+        @SuppressWarnings("unchecked")
+        private <T extends Ast> List<T> list(int count) {
+            List<T> list = new ArrayList<>(count);
+            for (int i = rebuiltCount - count; i < rebuiltCount; i++) {
+                list.add((T) rebuilt[i]);
+                rebuilt[i] = null;
+            }
+            rebuiltCount -= count;
+            return list;
+        }
+
+        @Override
+        public Ast.Source visit(Ast.Source ast) {
+            List<Ast.Method> methods = list(ast.getMethods().size());
+            List<Ast.Field> fields = list(ast.getFields().size());
+            return new Ast.Source(fields, methods);
+        }
+
+        @Override
+        public Ast.Field visit(Ast.Field ast) {
+            return new Ast.Field(ast.getName(), ast.getTypeName(), ast.getConstant(), Optional.ofNullable(expression()));
+        }
+
+        @Override
+        public Ast.Method visit(Ast.Method ast) {
+            return new Ast.Method(ast.getName(), ast.getParameters(), ast.getParameterTypeNames(),
+                    ast.getReturnTypeName(), list(ast.getStatements().size()));
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Expression ast) {
+            return new Ast.Statement.Expression(expression());
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Declaration ast) {
+            return new Ast.Statement.Declaration(ast.getName(), ast.getTypeName(), Optional.ofNullable(expression()));
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Assignment ast) {
+            Ast.Expression value = expression();
+            return new Ast.Statement.Assignment(expression(), value);
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.If ast) {
+            List<Ast.Statement> elseStatements = list(ast.getElseStatements().size());
+            List<Ast.Statement> thenStatements = list(ast.getThenStatements().size());
+            return new Ast.Statement.If(expression(), thenStatements, elseStatements);
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.For ast) {
+            List<Ast.Statement> statements = list(ast.getStatements().size());
+            Ast.Statement increment = statement();
+            Ast.Expression condition = expression();
+            return new Ast.Statement.For(statement(), condition, increment, statements);
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.While ast) {
+            List<Ast.Statement> statements = list(ast.getStatements().size());
+            return new Ast.Statement.While(expression(), statements);
+        }
+
+        @Override
+        public Ast visit(Ast.Statement.Return ast) {
+            return new Ast.Statement.Return(expression());
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Literal ast) {
+            return canonical(new Ast.Expression.Literal(ast.getLiteral(), ast.getObject()));
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Group ast) {
+            return canonical(new Ast.Expression.Group(expression()));
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Binary ast) {
+            Ast.Expression right = expression();
+            return canonical(new Ast.Expression.Binary(ast.getOperator(), expression(), right));
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Access ast) {
+            return canonical(new Ast.Expression.Access(Optional.ofNullable(expression()), ast.getName()));
+        }
+
+        @Override
+        public Ast visit(Ast.Expression.Function ast) {
+            List<Ast.Expression> arguments = list(ast.getArguments().size());
+            return canonical(new Ast.Expression.Function(Optional.ofNullable(expression()), ast.getName(), arguments));
+        }
+
+        /**
+         * Pushes the children of each node, in order, and null for an absent
+         * one.
+         */
+        private final class Children implements Ast.Visitor<Void> {
+
+            private void child(Ast ast) {
+                push(ast, false);
+            }
+
+            private void children(List<? extends Ast> asts) {
+                for (Ast ast : asts) {
+                    child(ast);
+                }
+            }
+
+            @Override
+            public Void visit(Ast.Source ast) {
+                children(ast.getFields());
+                children(ast.getMethods());
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Field ast) {
+                child(ast.getValue().orElse(null));
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Method ast) {
+                children(ast.getStatements());
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Statement.Expression ast) {
+                child(ast.getExpression());
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Statement.Declaration ast) {
+                child(ast.getValue().orElse(null));
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Statement.Assignment ast) {
+                child(ast.getReceiver());
+                child(ast.getValue());
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Statement.If ast) {
+                child(ast.getCondition());
+                children(ast.getThenStatements());
+                children(ast.getElseStatements());
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Statement.For ast) {
+                // The initialization, condition and increment may be left out.
+                child(ast.getInitialization());
+                child(ast.getCondition());
+                child(ast.getIncrement());
+                children(ast.getStatements());
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Statement.While ast) {
+                child(ast.getCondition());
+                children(ast.getStatements());
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Statement.Return ast) {
+                child(ast.getValue());
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Expression.Literal ast) {
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Expression.Group ast) {
+                child(ast.getExpression());
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Expression.Binary ast) {
+                child(ast.getLeft());
+                child(ast.getRight());
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Expression.Access ast) {
+                child(ast.getReceiver().orElse(null));
+                return null;
+            }
+
+            @Override
+            public Void visit(Ast.Expression.Function ast) {
+                child(ast.getReceiver().orElse(null));
+                children(ast.getArguments());
+                return null;
+            }
+
+        }
+
+    }
+
+}
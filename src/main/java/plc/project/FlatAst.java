@@ -0,0 +1,536 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * A compact, struct-of-arrays encoding of an {@link Ast.Source}, the way
+ * {@link TokenBuffer} is one of tokens. Nodes are numbered in pre-order, so
+ * the source is node 0, and stored in parallel arrays of their
+ * {@link Kind}, two operands and the offset of their children in a shared
+ * array of node numbers. Names, operators and literals are operands which
+ * refer to a side table of values, each of which is stored once. A node
+ * costs 13 bytes plus 4 per child, instead of an object with its lists and
+ * {@link Optional}s.
+ *
+ * The children of each kind of node are, in order, with {@link #NONE} for
+ * an absent one:
+ * <ul>
+ *     <li>{@code SOURCE}: the fields, then the methods. The first operand is
+ *     the number of fields.</li>
+ *     <li>{@code FIELD}: the value. The operands are the name, and the type
+ *     name shifted left once with the low bit set for a constant.</li>
+ *     <li>{@code METHOD}: the statements. The operands are the name, and the
+ *     first of the parameters, their type names and the return type name
+ *     (or null), which are consecutive values.</li>
+ *     <li>{@code DECLARATION}: the value. The operands are the name and the
+ *     type name (or null).</li>
+ *     <li>{@code IF}: the condition, then the statements, then the else
+ *     statements. The second operand is the number of statements.</li>
+ *     <li>{@code FOR}: the initialization, the condition, the increment,
+ *     any of which may be absent, then the statements.</li>
+ *     <li>{@code WHILE}: the condition, then the statements.</li>
+ *     <li>{@code LITERAL}: none. The operand is the runtime object of the
+ *     literal (see {@link Ast.Expression.Literal#getObject()}).</li>
+ *     <li>{@code BINARY}: the left and right operands. The operand is the
+ *     operator.</li>
+ *     <li>{@code ACCESS}, {@code FUNCTION}: the receiver, then the arguments.
+ *     The operand is the name.</li>
+ *     <li>Any other kind: the nodes its {@link Ast} class holds.</li>
+ * </ul>
+ *
+ * Only the syntax is encoded, so the variables, functions and types the
+ * {@link Analyzer} sets are not kept, and {@link #materialize(int)} gives
+ * nodes without them.
+ */
+public final class FlatAst {
+
+    /**
+     * The kinds of nodes, one for each concrete {@link Ast} class.
+     */
+    public enum Kind {
+        SOURCE, FIELD, METHOD,
+        EXPRESSION_STATEMENT, DECLARATION, ASSIGNMENT, IF, FOR, WHILE, RETURN,
+        LITERAL, GROUP, BINARY, ACCESS, FUNCTION;
+
+        private static final Kind[] VALUES = values();
+
+        public static Kind of(int ordinal) {
+            return VALUES[ordinal];
+        }
+
+    }
+
+    /**
+     * The child number of an absent node.
+     */
+    public static final int NONE = -1;
+
+    private byte[] kinds = new byte[64];
+    private int[] operands = new int[64];
+    private int[] extras = new int[64];
+    private int[] firsts = new int[64];
+    private int size = 0;
+    private int[] children = new int[64];
+    private int childCount = 0;
+    private Object[] values = new Object[16];
+    private int valueCount = 0;
+
+    private FlatAst() {}
+
+    /**
+     * Encodes a source. A lazily parsed method (see
+     * {@link Parser#parseLazily(TokenBuffer)}) is parsed for it.
+     */
+    public static FlatAst of(Ast.Source source) {
+        FlatAst ast = new FlatAst();
+        ast.new Encoder().encode(source);
+        ast.trim();
+        return ast;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public Kind getKind(int node) {
+        return Kind.of(kinds[node]);
+    }
+
+    public int getChildCount(int node) {
+        return (node + 1 < size ? firsts[node + 1] : childCount) - firsts[node];
+    }
+
+    /**
+     * Returns the number of the {@code i}th child of a node, or
+     * {@link #NONE} if it is absent.
+     */
+    public int getChild(int node, int i) {
+        return children[firsts[node] + i];
+    }
+
+    public int getOperand(int node) {
+        return operands[node];
+    }
+
+    public int getExtra(int node) {
+        return extras[node];
+    }
+
+    /**
+     * Returns the value an operand refers to.
+     */
+    public Object getValue(int operand) {
+        return values[operand];
+    }
+
+    /**
+     * Returns the name, operator or runtime object of a node, for the kinds
+     * whose first operand refers to a value.
+     */
+    public Object getValueOf(int node) {
+        return values[operands[node]];
+    }
+
+    /**
+     * Returns the number of bytes in the arrays of the encoding, without the
+     * values themselves, which the {@link Ast} shares anyway.
+     */
+    public long bytes() {
+        return kinds.length + 4L * (operands.length + extras.length + firsts.length + children.length + values.length);
+    }
+
+    public Ast.Source toAst() {
+        return (Ast.Source) materialize(0);
+    }
+
+    /**
+     * Builds the {@link Ast} of a node and everything below it. The nodes
+     * below it are numbered right after it, so they are built from the last
+     * one back, each after its children, without recursion.
+     */
+    public Ast materialize(int node) {
+        int last = node;
+        for (int child = lastChild(node); child != NONE; child = lastChild(child)) {
+            last = child;
+        }
+        Materializer materializer = new Materializer(node, last + 1);
+        for (int i = last; i >= node; i--) {
+            materializer.build(i);
+        }
+        return materializer.get(node);
+    }
+
+    /**
+     * Returns the last child of a node which is present, or {@link #NONE}.
+     */
+    private int lastChild(int node) {
+        for (int i = getChildCount(node) - 1; i >= 0; i--) {
+            if (getChild(node, i) != NONE) {
+                return getChild(node, i);
+            }
+        }
+        return NONE;
+    }
+
+    /**
+     * Adds a node with room for its children, which are numbered after it
+     * and so have their slots after those of any node before it.
+     */
+    private int add(Kind kind, int operand, int extra, int count) {
+        if (size == kinds.length) {
+            int capacity = size + (size >> 1);
+            kinds = Arrays.copyOf(kinds, capacity);
+            operands = Arrays.copyOf(operands, capacity);
+            extras = Arrays.copyOf(extras, capacity);
+            firsts = Arrays.copyOf(firsts, capacity);
+        }
+        if (childCount + count > children.length) {
+            children = Arrays.copyOf(children, Math.max(childCount + count, childCount + (childCount >> 1)));
+        }
+        kinds[size] = (byte) kind.ordinal();
+        operands[size] = operand;
+        extras[size] = extra;
+        firsts[size] = childCount;
+        childCount += count;
+        return size++;
+    }
+
+    private void trim() {
+        kinds = Arrays.copyOf(kinds, size);
+        operands = Arrays.copyOf(operands, size);
+        extras = Arrays.copyOf(extras, size);
+        firsts = Arrays.copyOf(firsts, size);
+        children = Arrays.copyOf(children, childCount);
+        values = Arrays.copyOf(values, valueCount);
+    }
+
+    /**
+     * Builds the nodes numbered from {@code base} to {@code end}, whose
+     * children are built before them.
+     */
+    private final class Materializer {
+
+        private final int base;
+        private final Ast[] built;
+
+        private Materializer(int base, int end) {
+            this.base = base;
+            this.built = new Ast[end - base];
+        }
+
+        private Ast get(int node) {
+            return built[node - base];
+        }
+
+        private Ast.Expression expression(int node) {
+            return (Ast.Expression) get(node);
+        }
+
+        private Optional<Ast.Expression> optional(int node) {
+            return node == NONE ? Optional.empty() : Optional.of(expression(node));
+        }
+
+        private List<Ast.Statement> statements(int node, int from, int to) {
+            List<Ast.Statement> statements = new ArrayList<>(to - from);
+            for (int i = from; i < to; i++) {
+                statements.add((Ast.Statement) get(getChild(node, i)));
+            }
+            return statements;
+        }
+
+        private void build(int node) {
+            built[node - base] = create(node);
+        }
+
+        private Ast create(int node) {
+            int count = getChildCount(node);
+            switch (getKind(node)) {
+                case SOURCE: {
+                    int fields = operands[node];
+                    List<Ast.Field> fieldList = new ArrayList<>(fields);
+                    List<Ast.Method> methodList = new ArrayList<>(count - fields);
+                    for (int i = 0; i < count; i++) {
+                        Ast child = get(getChild(node, i));
+                        if (i < fields) {
+                            fieldList.add((Ast.Field) child);
+                        } else {
+                            methodList.add((Ast.Method) child);
+                        }
+                    }
+                    return new Ast.Source(fieldList, methodList);
+                }
+                case FIELD:
+                    return new Ast.Field((String) getValueOf(node), (String) values[extras[node] >>> 1],
+                            (extras[node] & 1) != 0, optional(getChild(node, 0)));
+                case METHOD: {
+                    int signature = extras[node];
+                    @SuppressWarnings("unchecked")
+                    List<String> parameters = (List<String>) values[signature];
+                    @SuppressWarnings("unchecked")
+                    List<String> parameterTypeNames = (List<String>) values[signature + 1];
+                    return new Ast.Method((String) getValueOf(node), new ArrayList<>(parameters),
+                            new ArrayList<>(parameterTypeNames), Optional.ofNullable((String) values[signature + 2]),
+                            statements(node, 0, count));
+                }
+                case EXPRESSION_STATEMENT:
+                    return new Ast.Statement.Expression(expression(getChild(node, 0)));
+                case DECLARATION:
+                    return new Ast.Statement.Declaration((String) getValueOf(node),
+                            Optional.ofNullable((String) values[extras[node]]), optional(getChild(node, 0)));
+                case ASSIGNMENT:
+                    return new Ast.Statement.Assignment(expression(getChild(node, 0)), expression(getChild(node, 1)));
+                case IF: {
+                    int then = 1 + extras[node];
+                    return new Ast.Statement.If(expression(getChild(node, 0)),
+                            statements(node, 1, then), statements(node, then, count));
+                }
+                case FOR: {
+                    int initialization = getChild(node, 0);
+                    int condition = getChild(node, 1);
+                    int increment = getChild(node, 2);
+                    return new Ast.Statement.For(
+                            initialization == NONE ? null : (Ast.Statement) get(initialization),
+                            condition == NONE ? null : expression(condition),
+                            increment == NONE ? null : (Ast.Statement) get(increment),
+                            statements(node, 3, count));
+                }
+                case WHILE:
+                    return new Ast.Statement.While(expression(getChild(node, 0)), statements(node, 1, count));
+                case RETURN:
+                    return new Ast.Statement.Return(expression(getChild(node, 0)));
+                case LITERAL: {
+                    Environment.PlcObject object = (Environment.PlcObject) getValueOf(node);
+                    return new Ast.Expression.Literal(object == Environment.NIL ? null : object.getValue(), object);
+                }
+                case GROUP:
+                    return new Ast.Expression.Group(expression(getChild(node, 0)));
+                case BINARY:
+                    return new Ast.Expression.Binary((String) getValueOf(node),
+                            expression(getChild(node, 0)), expression(getChild(node, 1)));
+                case ACCESS:
+                    return new Ast.Expression.Access(optional(getChild(node, 0)), (String) getValueOf(node));
+                case FUNCTION: {
+                    List<Ast.Expression> arguments = new ArrayList<>(count - 1);
+                    for (int i = 1; i < count; i++) {
+                        arguments.add(expression(getChild(node, i)));
+                    }
+                    return new Ast.Expression.Function(optional(getChild(node, 0)), (String) getValueOf(node), arguments);
+                }
+                default:
+                    throw new AssertionError(getKind(node));
+            }
+        }
+
+    }
+
+    /**
+     * Encodes each node into the arrays, returning its number. The values
+     * are numbered through a map while encoding, so that each is stored once.
+     *
+     * Visiting a node adds it and pushes its children, with the slots their
+     * numbers go in, on an explicit stack instead of recursing, so that
+     * nesting is bounded only by memory. The children of each node are
+     * pushed last to first, so they are popped and numbered in pre-order.
+     */
+    private final class Encoder implements Ast.Visitor<Integer> {
+
+        private final Map<Object, Integer> refs = new HashMap<>();
+        private Ast[] pending = new Ast[16];
+        private int[] slots = new int[16];
+        private int pendingCount = 0;
+
+        private void encode(Ast.Source source) {
+            push(source, NONE);
+            while (pendingCount > 0) {
+                pendingCount--;
+                Ast ast = pending[pendingCount];
+                int slot = slots[pendingCount];
+                pending[pendingCount] = null;
+                int top = pendingCount;
+                int node = visit(ast);
+                if (slot != NONE) {
+                    children[slot] = node;
+                }
+                reverse(top, pendingCount);
+            }
+        }
+
+        private void push(Ast ast, int slot) {
+            if (pendingCount == pending.length) {
+                pending = Arrays.copyOf(pending, pendingCount * 2);
+                slots = Arrays.copyOf(slots, pendingCount * 2);
+            }
+            pending[pendingCount] = ast;
+            slots[pendingCount++] = slot;
+        }
+
+        private void reverse(int from, int to) {
+            for (to--; from < to; from++, to--) {
+                Ast ast = pending[from];
+                pending[from] = pending[to];
+                pending[to] = ast;
+                int slot = slots[from];
+                slots[from] = slots[to];
+                slots[to] = slot;
+            }
+        }
+
+        private int ref(Object value) {
+            Integer ref = refs.get(value);
+            if (ref == null) {
+                ref = append(value);
+                refs.put(value, ref);
+            }
+            return ref;
+        }
+
+        private int append(Object value) {
+            if (valueCount == values.length) {
+                values = Arrays.copyOf(values, valueCount * 2);
+            }
+            values[valueCount] = value;
+            return valueCount++;
+        }
+
+        private void child(int node, int i, Ast child) {
+            if (child == null) {
+                children[firsts[node] + i] = NONE;
+            } else {
+                push(child, firsts[node] + i);
+            }
+        }
+
+        private void children(int node, int i, List<? extends Ast> nodes) {
+            for (Ast child : nodes) {
+                child(node, i++, child);
+            }
+        }
+
+        @Override
+        public Integer visit(Ast.Source ast) {
+            int node = add(Kind.SOURCE, ast.getFields().size(), 0, ast.getFields().size() + ast.getMethods().size());
+            children(node, 0, ast.getFields());
+            children(node, ast.getFields().size(), ast.getMethods());
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Field ast) {
+            int extra = ref(ast.getTypeName()) << 1 | (ast.getConstant() ? 1 : 0);
+            int node = add(Kind.FIELD, ref(ast.getName()), extra, 1);
+            child(node, 0, ast.getValue().orElse(null));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Method ast) {
+            List<Ast.Statement> statements = ast.getStatements();
+            // The signature is three consecutive values, so it is not shared.
+            int signature = append(ast.getParameters());
+            append(ast.getParameterTypeNames());
+            append(ast.getReturnTypeName().orElse(null));
+            int node = add(Kind.METHOD, ref(ast.getName()), signature, statements.size());
+            children(node, 0, statements);
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Expression ast) {
+            int node = add(Kind.EXPRESSION_STATEMENT, 0, 0, 1);
+            child(node, 0, ast.getExpression());
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Declaration ast) {
+            int node = add(Kind.DECLARATION, ref(ast.getName()), ref(ast.getTypeName().orElse(null)), 1);
+            child(node, 0, ast.getValue().orElse(null));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Assignment ast) {
+            int node = add(Kind.ASSIGNMENT, 0, 0, 2);
+            child(node, 0, ast.getReceiver());
+            child(node, 1, ast.getValue());
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.If ast) {
+            int then = ast.getThenStatements().size();
+            int node = add(Kind.IF, 0, then, 1 + then + ast.getElseStatements().size());
+            child(node, 0, ast.getCondition());
+            children(node, 1, ast.getThenStatements());
+            children(node, 1 + then, ast.getElseStatements());
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.For ast) {
+            int node = add(Kind.FOR, 0, 0, 3 + ast.getStatements().size());
+            child(node, 0, ast.getInitialization());
+            child(node, 1, ast.getCondition());
+            child(node, 2, ast.getIncrement());
+            children(node, 3, ast.getStatements());
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.While ast) {
+            int node = add(Kind.WHILE, 0, 0, 1 + ast.getStatements().size());
+            child(node, 0, ast.getCondition());
+            children(node, 1, ast.getStatements());
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Statement.Return ast) {
+            int node = add(Kind.RETURN, 0, 0, 1);
+            child(node, 0, ast.getValue());
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Literal ast) {
+            return add(Kind.LITERAL, ref(ast.getObject()), 0, 0);
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Group ast) {
+            int node = add(Kind.GROUP, 0, 0, 1);
+            child(node, 0, ast.getExpression());
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Binary ast) {
+            int node = add(Kind.BINARY, ref(ast.getOperator()), 0, 2);
+            child(node, 0, ast.getLeft());
+            child(node, 1, ast.getRight());
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Access ast) {
+            int node = add(Kind.ACCESS, ref(ast.getName()), 0, 1);
+            child(node, 0, ast.getReceiver().orElse(null));
+            return node;
+        }
+
+        @Override
+        public Integer visit(Ast.Expression.Function ast) {
+            int node = add(Kind.FUNCTION, ref(ast.getName()), 0, 1 + ast.getArguments().size());
+            child(node, 0, ast.getReceiver().orElse(null));
+            children(node, 1, ast.getArguments());
+            return node;
+        }
+
+    }
+
+}
@@ -205,12 +205,7 @@ public class Interpreter implements Ast.Visitor<Environment.PlcObject> {
 
     @Override
     public Environment.PlcObject visit(Ast.Expression.Literal ast) {
-        Object literal = ast.getLiteral();
-        if (literal == null) {
-            return Environment.NIL;
-        } else {
-            return Environment.create(literal);
-        }
+        return ast.getObject();
     }
 
     @Override
@@ -1,187 +1,783 @@
 package plc.project;
 
+import java.nio.ByteBuffer;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
 
+/**
+ * Table-driven lexer. Every character is mapped to a character class through
+ * {@link #CLASSES}, and each token is recognized by walking the transition
+ * table {@link #TRANSITIONS} from an entry state until it reaches an action
+ * (emit, error or operator). Keywords and operators are resolved to their
+ * {@link Token.Kind} through tries at lex time. No regular expressions are
+ * involved and no objects are allocated per character.
+ *
+ * Runs of whitespace, identifier characters and digits are consumed in bulk
+ * rather than one transition at a time. For byte-backed input
+ * ({@link ByteSequence}) this uses {@link VectorRuns} when the
+ * {@code jdk.incubator.vector} module is enabled. Line breaks seen while
+ * skipping whitespace are recorded in a {@link LineIndex} for diagnostics.
+ */
 public class Lexer {
 
     private final CharStream input;
-    private static final String[] OPERATORS = {
-            "&&", "||", "==", "!=", "<=", ">=",
-            "+", "-", "*", "/", "%", "<", ">", "=", "!", "^", "~", "@",
-            "(", ")", "{", "}", "[", "]", ",", ";", ".", ":"
-    };
+    private TokenBuffer buffer;
+    // Whether the buffer may be reused, which only a reset() allows, since
+    // until then it is still the result of the previous lexCompact().
+    private boolean reusable = false;
+    private boolean recovering = false;
+    private static final Trie KEYWORDS = new Trie();
+    private static final Trie OPERATORS = new Trie();
 
-    public Lexer(String input) {
-        this.input = new CharStream(input);
-    }
+    // Character classes. Anything outside of ASCII is OTHER.
+    private static final int OTHER = 0;
+    private static final int WHITESPACE = 1;
+    private static final int NEWLINE = 2;
+    private static final int LETTER = 3;
+    private static final int ESCAPE_LETTER = 4;
+    private static final int ZERO = 5;
+    private static final int DIGIT = 6;
+    private static final int PLUS = 7;
+    private static final int MINUS = 8;
+    private static final int DOT = 9;
+    private static final int QUOTE = 10;
+    private static final int DOUBLE_QUOTE = 11;
+    private static final int BACKSLASH = 12;
+    private static final int EOF = 13;
+    private static final int CLASS_COUNT = 14;
 
-    public List<Token> lex() {
-        List<Token> tokens = new ArrayList<>();
-        while (input.has(0)) {
-            if (peek("[ \b\n\r\t]")) {
-                input.advance();
-                input.skip();
-            } else {
-                tokens.add(lexToken());
+    private static final byte[] CLASSES = new byte[128];
+
+    private static final int MIN_CHUNK = 1 << 16;
+
+    // Identifiers a thread's lexer keeps interned across inputs; see local().
+    private static final int LOCAL_SYMBOLS = 1 << 12;
+    private static final ThreadLocal<Lexer> LOCAL = ThreadLocal.withInitial(() -> new Lexer(""));
+
+    // States. Transitions into a state consume the current character.
+    private static final int START = 0;
+    private static final int IDENTIFIER = 1;
+    private static final int SIGN = 2;
+    private static final int NUMBER = 3;
+    private static final int NUMBER_SIGN = 4;
+    private static final int INTEGER_ZERO = 5;
+    private static final int INTEGER = 6;
+    private static final int DECIMAL_POINT = 7;
+    private static final int DECIMAL = 8;
+    private static final int CHARACTER_OPEN = 9;
+    private static final int CHARACTER_ESCAPE = 10;
+    private static final int CHARACTER_BODY = 11;
+    private static final int CHARACTER_CLOSE = 12;
+    private static final int STRING = 13;
+    private static final int STRING_ESCAPE = 14;
+    private static final int STRING_CLOSE = 15;
+    private static final int STATE_COUNT = 16;
+
+    // Actions. These are negative so that they can share the transition table
+    // with states; none of them consume the current character.
+    private static final int EMIT_IDENTIFIER = -1;
+    private static final int EMIT_INTEGER = -2;
+    private static final int EMIT_DECIMAL = -3;
+    private static final int EMIT_CHARACTER = -4;
+    private static final int EMIT_STRING = -5;
+    private static final int LEX_OPERATOR = -6;
+    private static final int ERROR_NUMBER = -7;
+    private static final int ERROR_LEADING_ZERO = -8;
+    private static final int ERROR_DECIMAL = -9;
+    private static final int ERROR_CHARACTER = -10;
+    private static final int ERROR_CHARACTER_ESCAPE = -11;
+    private static final int ERROR_CHARACTER_UNTERMINATED = -12;
+    private static final int ERROR_STRING = -13;
+    private static final int ERROR_STRING_ESCAPE = -14;
+    private static final int ERROR_STRING_UNTERMINATED = -15;
+
+    private static final byte[] TRANSITIONS = new byte[STATE_COUNT * CLASS_COUNT];
+
+    // Runs of characters which a state loops on, as bits of RUN_MEMBERS. A
+    // state with a run in RUNS consumes the whole run in one step.
+    private static final int RUN_WHITESPACE = 1;
+    private static final int RUN_IDENTIFIER = 2;
+    private static final int RUN_DIGITS = 4;
+
+    private static final byte[] RUN_MEMBERS = new byte[128];
+    private static final byte[] RUNS = new byte[STATE_COUNT];
+
+    private static final boolean VECTORIZED = ModuleLayer.boot().findModule("jdk.incubator.vector").isPresent();
+
+    static {
+        CLASSES[' '] = WHITESPACE;
+        CLASSES['\b'] = WHITESPACE;
+        CLASSES['\t'] = WHITESPACE;
+        CLASSES['\n'] = NEWLINE;
+        CLASSES['\r'] = NEWLINE;
+        for (char c = 'A'; c <= 'Z'; c++) {
+            CLASSES[c] = LETTER;
+            CLASSES[c + ('a' - 'A')] = LETTER;
+        }
+        CLASSES['_'] = LETTER;
+        CLASSES['b'] = ESCAPE_LETTER;
+        CLASSES['n'] = ESCAPE_LETTER;
+        CLASSES['r'] = ESCAPE_LETTER;
+        CLASSES['t'] = ESCAPE_LETTER;
+        CLASSES['0'] = ZERO;
+        for (char c = '1'; c <= '9'; c++) {
+            CLASSES[c] = DIGIT;
+        }
+        CLASSES['+'] = PLUS;
+        CLASSES['-'] = MINUS;
+        CLASSES['.'] = DOT;
+        CLASSES['\''] = QUOTE;
+        CLASSES['"'] = DOUBLE_QUOTE;
+        CLASSES['\\'] = BACKSLASH;
+
+        fill(START, LEX_OPERATOR);
+        on(START, IDENTIFIER, LETTER, ESCAPE_LETTER);
+        on(START, SIGN, PLUS, MINUS);
+        on(START, INTEGER_ZERO, ZERO);
+        on(START, INTEGER, DIGIT);
+        on(START, CHARACTER_OPEN, QUOTE);
+        on(START, STRING, DOUBLE_QUOTE);
+
+        fill(IDENTIFIER, EMIT_IDENTIFIER);
+        on(IDENTIFIER, IDENTIFIER, LETTER, ESCAPE_LETTER, ZERO, DIGIT, MINUS);
+
+        fill(SIGN, LEX_OPERATOR);
+        on(SIGN, INTEGER_ZERO, ZERO);
+        on(SIGN, INTEGER, DIGIT);
+
+        fill(NUMBER, ERROR_NUMBER);
+        on(NUMBER, NUMBER_SIGN, PLUS, MINUS);
+        on(NUMBER, INTEGER_ZERO, ZERO);
+        on(NUMBER, INTEGER, DIGIT);
+
+        fill(NUMBER_SIGN, ERROR_NUMBER);
+        on(NUMBER_SIGN, INTEGER_ZERO, ZERO);
+        on(NUMBER_SIGN, INTEGER, DIGIT);
+
+        fill(INTEGER_ZERO, EMIT_INTEGER);
+        on(INTEGER_ZERO, ERROR_LEADING_ZERO, ZERO, DIGIT);
+        on(INTEGER_ZERO, DECIMAL_POINT, DOT);
+
+        fill(INTEGER, EMIT_INTEGER);
+        on(INTEGER, INTEGER, ZERO, DIGIT);
+        on(INTEGER, DECIMAL_POINT, DOT);
+
+        fill(DECIMAL_POINT, ERROR_DECIMAL);
+        on(DECIMAL_POINT, DECIMAL, ZERO, DIGIT);
+
+        fill(DECIMAL, EMIT_DECIMAL);
+        on(DECIMAL, DECIMAL, ZERO, DIGIT);
+
+        fill(CHARACTER_OPEN, CHARACTER_BODY);
+        on(CHARACTER_OPEN, ERROR_CHARACTER, QUOTE, NEWLINE, EOF);
+        on(CHARACTER_OPEN, CHARACTER_ESCAPE, BACKSLASH);
+
+        fill(CHARACTER_ESCAPE, ERROR_CHARACTER_ESCAPE);
+        on(CHARACTER_ESCAPE, CHARACTER_BODY, ESCAPE_LETTER, QUOTE, DOUBLE_QUOTE, BACKSLASH);
+
+        fill(CHARACTER_BODY, ERROR_CHARACTER_UNTERMINATED);
+        on(CHARACTER_BODY, CHARACTER_CLOSE, QUOTE);
+
+        fill(CHARACTER_CLOSE, EMIT_CHARACTER);
+
+        fill(STRING, STRING);
+        on(STRING, STRING_CLOSE, DOUBLE_QUOTE);
+        on(STRING, STRING_ESCAPE, BACKSLASH);
+        on(STRING, ERROR_STRING, NEWLINE);
+        on(STRING, ERROR_STRING_UNTERMINATED, EOF);
+
+        fill(STRING_ESCAPE, ERROR_STRING_ESCAPE);
+        on(STRING_ESCAPE, STRING, ESCAPE_LETTER, QUOTE, DOUBLE_QUOTE, BACKSLASH);
+
+        fill(STRING_CLOSE, EMIT_STRING);
+
+        RUNS[IDENTIFIER] = RUN_IDENTIFIER;
+        RUNS[INTEGER] = RUN_DIGITS;
+        RUNS[DECIMAL] = RUN_DIGITS;
+        for (int c = 0; c < 128; c++) {
+            int type = CLASSES[c];
+            if (type == WHITESPACE || type == NEWLINE) {
+                RUN_MEMBERS[c] |= RUN_WHITESPACE;
+            }
+            if (TRANSITIONS[IDENTIFIER * CLASS_COUNT + type] == IDENTIFIER) {
+                RUN_MEMBERS[c] |= RUN_IDENTIFIER;
+            }
+            if (TRANSITIONS[INTEGER * CLASS_COUNT + type] == INTEGER) {
+                RUN_MEMBERS[c] |= RUN_DIGITS;
+            }
+        }
+
+        for (Token.Kind kind : Token.Kind.values()) {
+            if (kind.getLiteral() != null) {
+                (kind.getType() == Token.Type.IDENTIFIER ? KEYWORDS : OPERATORS).insert(kind.getLiteral(), kind);
             }
         }
-        return tokens;
     }
 
-    public Token lexToken() {
-        if (peek("[A-Za-z_]")) {
-            return lexIdentifier();
-        } else if (peek("[+-]?")) {
-            if (peek("[+-]?", "0")) {
-                return lexNumber();
-            } else if (peek("[+-]?", "[1-9]")) {
-                return lexNumber();
-            } else {
-                return lexOperator();
-            }
-        } else if (peek("0") || peek("[1-9]")) {
-            return lexNumber();
-        } else if (peek("'")) {
-            return lexCharacter();
-        } else if (peek("\"")) {
-            return lexString();
-        } else {
-            return lexOperator();
+    private static void fill(int state, int target) {
+        for (int c = 0; c < CLASS_COUNT; c++) {
+            TRANSITIONS[state * CLASS_COUNT + c] = (byte) target;
         }
     }
 
-    public Token lexIdentifier() {
-        match("[A-Za-z_]");
-        while (match("[A-Za-z0-9_-]")) {
+    private static void on(int state, int target, int... classes) {
+        for (int c : classes) {
+            TRANSITIONS[state * CLASS_COUNT + c] = (byte) target;
         }
-        return input.emit(Token.Type.IDENTIFIER);
     }
 
-    public Token lexNumber() {
-        match("[+-]?");
-        if (match("0")) {
-            if (peek("[0-9]")) {
-                throw new ParseException("Invalid integer with leading zero", input.index);
-            }
-            if (peek("\\.")) {
-                return lexDecimal();
+    public Lexer(CharSequence input) {
+        this(input, new SymbolTable());
+    }
+
+    /**
+     * Creates a lexer which interns identifiers in the given table, which
+     * can be shared with the rest of the compilation.
+     */
+    public Lexer(CharSequence input, SymbolTable symbols) {
+        this.input = new CharStream(input, 0, symbols, new LineIndex());
+    }
+
+    /**
+     * Lexes UTF-8 encoded bytes in place, without decoding them into a
+     * {@link String} first. Token and exception indices are char offsets, as
+     * if the bytes had been decoded, if {@code charOffsets} is set (see
+     * {@link Utf8Sequence}), and byte offsets otherwise (see
+     * {@link ByteSequence}). The two coincide for ASCII input, which is then
+     * always read as a {@link ByteSequence}.
+     */
+    public Lexer(ByteBuffer input, boolean charOffsets) {
+        this(charOffsets ? decode(input) : new ByteSequence(input));
+    }
+
+    public Lexer(byte[] input, boolean charOffsets) {
+        this(ByteBuffer.wrap(input), charOffsets);
+    }
+
+    private Lexer(CharSequence input, int start, SymbolTable symbols, LineIndex lines) {
+        this.input = new CharStream(input, start, symbols, lines);
+    }
+
+    /**
+     * Returns the calling thread's lexer, reset to the given input. This
+     * lexer is shared by every call on the thread, so its results (see
+     * {@link #reset(CharSequence)}) are only valid until the next call.
+     * Identifiers stay interned across calls until the table holds a few
+     * thousand of them, when it is replaced.
+     */
+    public static Lexer local(CharSequence input) {
+        Lexer lexer = LOCAL.get();
+        SymbolTable symbols = lexer.input.symbols;
+        return lexer.reset(input, symbols.size() < LOCAL_SYMBOLS ? symbols : new SymbolTable());
+    }
+
+    /**
+     * Restarts the lexer on a new input, keeping its symbol table, so that
+     * one lexer can lex many small inputs without allocating a new one each
+     * time. The buffer returned by {@link #lexCompact()} and the line index
+     * are reused as well, so those of the previous input (and the line and
+     * column of its exceptions) are invalid after this call.
+     */
+    public Lexer reset(CharSequence input) {
+        return reset(input, this.input.symbols);
+    }
+
+    /**
+     * Restarts the lexer on a new input like {@link #reset(CharSequence)},
+     * interning identifiers in the given table from now on.
+     */
+    public Lexer reset(CharSequence input, SymbolTable symbols) {
+        this.input.reset(input, 0, symbols);
+        this.input.lines.clear();
+        this.reusable = buffer != null;
+        return this;
+    }
+
+    private static CharSequence decode(ByteBuffer input) {
+        Utf8Sequence sequence = new Utf8Sequence(input);
+        return sequence.isAscii() ? new ByteSequence(input) : sequence;
+    }
+
+    /**
+     * Lexes the input in chunks on the common pool; see
+     * {@link #lexParallel(CharSequence, ForkJoinPool)}.
+     */
+    public static TokenBuffer lexParallel(CharSequence input) {
+        return lexParallel(input, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Lexes the input in chunks on the given pool, producing the same tokens
+     * and the same first {@link ParseException} as {@link #lexCompact()}.
+     *
+     * Chunks are split at line breaks. No token can contain a line break (a
+     * string or character literal that reaches one is an error), so every
+     * line break is a token boundary and each chunk can be lexed without
+     * knowing what came before it. A chunk keeps lexing past its end only to
+     * finish a token that started inside it, which therefore fails exactly
+     * as it would sequentially. Tokens hold offsets into the shared input, so
+     * no index rebasing is needed when the chunks are concatenated.
+     */
+    public static TokenBuffer lexParallel(CharSequence input, ForkJoinPool pool) {
+        int[] bounds = split(input, Math.min(pool.getParallelism() * 4, input.length() / MIN_CHUNK));
+        int chunks = bounds.length - 1;
+        if (chunks == 1) {
+            return new Lexer(input).lexCompact();
+        }
+        // Chunks only record offsets, so they can share a table.
+        SymbolTable symbols = new SymbolTable();
+        TokenBuffer[] results = new TokenBuffer[chunks];
+        ParseException[] errors = new ParseException[chunks];
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(chunks);
+        for (int i = 0; i < chunks; i++) {
+            int chunk = i;
+            tasks.add(pool.submit(() -> {
+                try {
+                    results[chunk] = new Lexer(input, bounds[chunk], symbols, new LineIndex()).lexCompact(bounds[chunk + 1]);
+                } catch (ParseException e) {
+                    errors[chunk] = e;
+                }
+            }));
+        }
+        TokenBuffer buffer = null;
+        for (int i = 0; i < chunks; i++) {
+            tasks.get(i).join();
+            if (errors[i] != null) {
+                for (int j = i + 1; j < chunks; j++) {
+                    tasks.get(j).cancel(false);
+                }
+                LineIndex lines = buffer != null ? buffer.getLines() : new LineIndex();
+                lines.append(errors[i].getLines(), 0, input.length() + 1, 0);
+                throw errors[i].locate(lines);
+            } else if (buffer == null) {
+                buffer = results[i];
             } else {
-                return input.emit(Token.Type.INTEGER);
+                buffer.addAll(results[i]);
             }
-        } else if (match("[1-9]")) {
-            while (match("[0-9]")) {}
-            if (peek("\\.")) {
-                return lexDecimal();
+        }
+        return buffer;
+    }
+
+    /**
+     * Applies an edit to the source of {@code previous} and re-lexes it; see
+     * {@link #relex(TokenBuffer, CharSequence, int, int, int)}.
+     */
+    public static TokenBuffer relex(TokenBuffer previous, int offset, int removed, CharSequence text) {
+        CharSequence source = previous.getSource();
+        String updated = new StringBuilder(source.length() - removed + text.length())
+                .append(source, 0, offset)
+                .append(text)
+                .append(source, offset + removed, source.length())
+                .toString();
+        return relex(previous, updated, offset, removed, text.length());
+    }
+
+    /**
+     * Incrementally re-lexes {@code source}, which is the source of
+     * {@code previous} with {@code removed} chars at {@code offset} replaced
+     * by {@code inserted} new ones. The result is identical to lexing
+     * {@code source} from scratch, including the {@link ParseException}
+     * thrown when the edit leaves an invalid or unterminated literal.
+     *
+     * A token depends on its own chars and at most one char of lookahead,
+     * so every token ending before {@code offset} is kept. Lexing restarts
+     * at the end of the last such token and stops as soon as a new token
+     * starts past the inserted text at the (shifted) start of an old token.
+     * The lexer carries no state between tokens, so from there on the old
+     * tokens are reused with shifted offsets. Literals cannot span lines, so
+     * this happens within a line or so of the edit.
+     */
+    public static TokenBuffer relex(TokenBuffer previous, CharSequence source, int offset, int removed, int inserted) {
+        int delta = inserted - removed;
+        int low = 0;
+        int high = previous.size();
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (previous.getIndex(middle) + previous.getLength(middle) < offset) {
+                low = middle + 1;
             } else {
-                return input.emit(Token.Type.INTEGER);
+                high = middle;
             }
-        } else {
-            throw new ParseException("Invalid number", input.index);
         }
+        int restart = low == 0 ? 0 : previous.getIndex(low - 1) + previous.getLength(low - 1);
+        LineIndex lines = new LineIndex();
+        lines.append(previous.getLines(), 0, restart + 1, 0);
+        TokenBuffer buffer = new TokenBuffer(source, previous.getSymbols(), lines, previous.size() + 16);
+        buffer.append(previous, 0, low, 0);
+        Lexer lexer = new Lexer(source, restart, previous.getSymbols(), lines);
+        int old = low;
+        while (lexer.skipWhitespace()) {
+            int start = lexer.input.index;
+            if (start >= offset + inserted) {
+                while (old < previous.size() && previous.getIndex(old) < start - delta) {
+                    old++;
+                }
+                if (old < previous.size() && previous.getIndex(old) == start - delta) {
+                    buffer.append(previous, old, previous.size(), delta);
+                    lines.append(previous.getLines(), start - delta + 1, previous.getSource().length() + 1, delta);
+                    return buffer;
+                }
+            }
+            Token.Kind kind = lexer.scan(START);
+            buffer.add(kind, start, lexer.input.index);
+            lexer.input.skip();
+        }
+        return buffer;
     }
 
-    private Token lexDecimal() {
-        match("\\.");
-        if (!match("[0-9]")) {
-            throw new ParseException("Invalid decimal number", input.index);
+    /**
+     * Returns up to {@code chunks + 1} increasing chunk bounds, each inner
+     * bound being the first line break at or after an even split point.
+     */
+    private static int[] split(CharSequence input, int chunks) {
+        int[] bounds = new int[Math.max(chunks, 1) + 1];
+        int count = 1;
+        for (int i = 1; i < chunks; i++) {
+            int bound = Math.max((int) ((long) input.length() * i / chunks), bounds[count - 1] + 1);
+            while (bound < input.length() && classify(input.charAt(bound)) != NEWLINE) {
+                bound++;
+            }
+            if (bound >= input.length()) {
+                break;
+            }
+            bounds[count++] = bound;
         }
-        while (match("[0-9]")) {}
-        return input.emit(Token.Type.DECIMAL);
+        bounds[count++] = input.length();
+        return Arrays.copyOf(bounds, count);
     }
 
-    public Token lexCharacter() {
-        match("'");
-        if (match("[^'\\\\\\n\\r]")) {
-        } else if (match("\\\\")) {
-            if (!match("[bnrt'\"\\\\]")) {
-                throw new ParseException("Invalid escape sequence in character literal", input.index);
-            }
+    /**
+     * Returns the line starts recorded so far, which cover the input up to
+     * the current position; see {@link LineIndex}.
+     */
+    public LineIndex getLines() {
+        return input.lines;
+    }
+
+    public List<Token> lex() {
+        List<Token> tokens = new ArrayList<>();
+        Token token;
+        while ((token = next()) != null) {
+            tokens.add(token);
+        }
+        return tokens;
+    }
+
+    /**
+     * Returns a source that lexes one token per call, so that the parser can
+     * consume tokens as they are produced instead of waiting for {@link #lex()}.
+     */
+    public TokenSource tokens() {
+        return this::next;
+    }
+
+    /**
+     * Lexes the whole input into a compact {@link TokenBuffer}. No
+     * {@link Token} objects are created along the way. After a
+     * {@link #reset(CharSequence)} the buffer of the previous input is
+     * cleared and reused; otherwise each call returns a new buffer.
+     */
+    public TokenBuffer lexCompact() {
+        return lexCompact(input.end);
+    }
+
+    /**
+     * Lexes every token that starts before {@code end}.
+     */
+    private TokenBuffer lexCompact(int end) {
+        if (reusable) {
+            this.buffer.reset(input.input, input.symbols, input.lines);
+            reusable = false;
         } else {
-            throw new ParseException("Invalid character literal", input.index);
+            this.buffer = new TokenBuffer(input.input, input.symbols, input.lines, 16 + (end - input.index) / 8);
         }
-        if (!match("'")) {
-            throw new ParseException("Unterminated character literal", input.index);
+        TokenBuffer buffer = this.buffer;
+        while (skipWhitespace() && input.index < end) {
+            Token.Kind kind = scan(START);
+            buffer.add(kind, input.index - input.length, input.index);
+            input.skip();
         }
-        return input.emit(Token.Type.CHARACTER);
+        return buffer;
     }
 
-    public Token lexString() {
-        match("\"");
-        while (!peek("\"")) {
-            if (!input.has(0)) {
-                throw new ParseException("Unterminated string literal", input.index);
-            }
-            if (match("[^\"\\\\\\n\\r]")) {
-            } else if (match("\\\\")) {
-                if (!match("[bnrt'\"\\\\]")) {
-                    throw new ParseException("Invalid escape sequence in string literal", input.index);
+    /**
+     * Lexes the whole input like {@link #lexCompact()}, but instead of
+     * throwing at the first invalid token it records the exception in
+     * {@code errors}, emits an {@link Token.Type#ERROR} token and carries on.
+     * Clean input takes exactly the same path as {@link #lexCompact()}. The
+     * recorded exceptions have no stack traces.
+     */
+    public TokenBuffer lexRecovering(List<ParseException> errors) {
+        recovering = true;
+        TokenBuffer buffer = new TokenBuffer(input.input, input.symbols, input.lines, 16 + input.end / 8);
+        while (skipWhitespace()) {
+            Token.Kind kind;
+            try {
+                kind = scan(START);
+            } catch (ParseException e) {
+                errors.add(e);
+                kind = recover();
+            }
+            buffer.add(kind, input.index - input.length, input.index);
+            input.skip();
+        }
+        return buffer;
+    }
+
+    /**
+     * Extends a token that failed to lex up to a point where lexing can
+     * resume. A string or character literal runs to its closing quote or the
+     * end of the line; anything else runs to the next whitespace or operator.
+     */
+    private Token.Kind recover() {
+        int start = input.index - input.length;
+        char first = input.input.charAt(start);
+        int position = start + 1;
+        if (first == '"' || first == '\'') {
+            while (position < input.end) {
+                char c = input.input.charAt(position);
+                if (classify(c) == NEWLINE) {
+                    break;
+                }
+                position += c == '\\' ? 2 : 1;
+                if (c == first) {
+                    break;
                 }
-            } else {
-                throw new ParseException("Invalid string literal", input.index);
             }
+            position = Math.min(position, input.end);
+        } else {
+            position = Math.max(position, input.index);
+            while (position < input.end) {
+                char c = input.input.charAt(position);
+                int type = classify(c);
+                if (type == WHITESPACE || type == NEWLINE || OPERATORS.child(Trie.ROOT, c) != Trie.NONE) {
+                    break;
+                }
+                position++;
+            }
+        }
+        while (input.index < position) {
+            input.advance();
         }
-        match("\"");
-        return input.emit(Token.Type.STRING);
+        return Token.Kind.ERROR;
+    }
+
+    /**
+     * Skips whitespace and lexes the next token, or returns {@code null} at the
+     * end of the input.
+     */
+    private Token next() {
+        return skipWhitespace() ? lexToken() : null;
+    }
+
+    /**
+     * Skips whitespace, returning true if there is any input left.
+     */
+    private boolean skipWhitespace() {
+        input.advanceRun(RUN_WHITESPACE);
+        input.skip();
+        return input.has(0);
+    }
+
+    public Token lexToken() {
+        return input.emit(scan(START));
+    }
+
+    public Token lexIdentifier() {
+        input.advance();
+        return input.emit(scan(IDENTIFIER));
+    }
+
+    public Token lexNumber() {
+        return input.emit(scan(NUMBER));
+    }
+
+    public Token lexCharacter() {
+        input.advance();
+        return input.emit(scan(CHARACTER_OPEN));
+    }
+
+    public Token lexString() {
+        input.advance();
+        return input.emit(scan(STRING));
     }
 
     public Token lexOperator() {
-        for (String op : OPERATORS) {
-            if (matchExact(op)) {
-                return input.emit(Token.Type.OPERATOR);
+        return input.emit(matchOperator());
+    }
+
+    /**
+     * Consumes the longest operator at the current position by walking the
+     * operator trie.
+     */
+    private Token.Kind matchOperator() {
+        Token.Kind kind = null;
+        int matched = 0;
+        int node = Trie.ROOT;
+        for (int i = 0; input.has(i); i++) {
+            node = OPERATORS.child(node, input.get(i));
+            if (node == Trie.NONE) {
+                break;
+            } else if (OPERATORS.kind(node) != null) {
+                kind = OPERATORS.kind(node);
+                matched = i + 1;
             }
         }
-        throw new ParseException("Invalid operator", input.index);
+        if (kind == null) {
+            throw error("Invalid operator");
+        }
+        for (int i = 0; i < matched; i++) {
+            input.advance();
+        }
+        return kind;
     }
 
-    public boolean peek(String... patterns) {
-        int offset = 0;
-        for (String pattern : patterns) {
-            if (!input.has(offset)) return false;
-            String s = String.valueOf(input.get(offset));
-            if (!s.matches(pattern)) {
+    /**
+     * Returns true if the input at the current position starts with the
+     * given text, comparing it in place.
+     */
+    public boolean peekExact(String pattern) {
+        for (int i = 0; i < pattern.length(); i++) {
+            if (!input.has(i) || input.get(i) != pattern.charAt(i)) {
                 return false;
             }
-            offset++;
         }
         return true;
     }
 
-    public boolean match(String... patterns) {
-        if (!peek(patterns)) return false;
-        for (String ignored : patterns) {
+    /**
+     * Consumes the given text if the input at the current position starts
+     * with it; see {@link #peekExact(String)}.
+     */
+    public boolean matchExact(String pattern) {
+        if (!peekExact(pattern)) {
+            return false;
+        }
+        for (int i = 0; i < pattern.length(); i++) {
             input.advance();
         }
         return true;
     }
 
-    public boolean peekExact(String pattern) {
-        if (!input.has(pattern.length() - 1)) {
-            return false;
+    /**
+     * Resolves the pending identifier to its keyword kind, if it is one, by
+     * walking the keyword trie over the source in place.
+     */
+    private Token.Kind identifierKind() {
+        int node = Trie.ROOT;
+        for (int i = -input.length; i < 0 && node != Trie.NONE; i++) {
+            node = KEYWORDS.child(node, input.get(i));
         }
-        String s = input.input.substring(input.index, input.index + pattern.length());
-        return s.equals(pattern);
+        Token.Kind kind = node != Trie.NONE ? KEYWORDS.kind(node) : null;
+        return kind != null ? kind : Token.Kind.IDENTIFIER;
     }
 
-    public boolean matchExact(String pattern) {
-        if (!peekExact(pattern)) return false;
-        for (int i = 0; i < pattern.length(); i++) {
-            input.advance();
+    /**
+     * Runs the transition table from the given state until an action is
+     * reached, then performs that action. On success the token is left
+     * pending in the stream and its kind is returned.
+     */
+    private Token.Kind scan(int state) {
+        while (true) {
+            int c = input.has(0) ? classify(input.get(0)) : EOF;
+            int next = TRANSITIONS[state * CLASS_COUNT + c];
+            if (next >= 0) {
+                input.advance();
+                state = next;
+                if (RUNS[state] != 0) {
+                    input.advanceRun(RUNS[state]);
+                } else if (c == OTHER && input.utf8) {
+                    input.advanceSequence();
+                }
+                continue;
+            }
+            switch (next) {
+                case EMIT_IDENTIFIER:
+                    return identifierKind();
+                case EMIT_INTEGER:
+                    return Token.Kind.INTEGER;
+                case EMIT_DECIMAL:
+                    return Token.Kind.DECIMAL;
+                case EMIT_CHARACTER:
+                    return Token.Kind.CHARACTER;
+                case EMIT_STRING:
+                    return Token.Kind.STRING;
+                case LEX_OPERATOR:
+                    input.reset();
+                    return matchOperator();
+                case ERROR_NUMBER:
+                    throw error("Invalid number");
+                case ERROR_LEADING_ZERO:
+                    throw error("Invalid integer with leading zero");
+                case ERROR_DECIMAL:
+                    throw error("Invalid decimal number");
+                case ERROR_CHARACTER:
+                    throw error("Invalid character literal");
+                case ERROR_CHARACTER_ESCAPE:
+                    throw error("Invalid escape sequence in character literal");
+                case ERROR_CHARACTER_UNTERMINATED:
+                    throw error("Unterminated character literal");
+                case ERROR_STRING:
+                    throw error("Invalid string literal");
+                case ERROR_STRING_ESCAPE:
+                    throw error("Invalid escape sequence in string literal");
+                case ERROR_STRING_UNTERMINATED:
+                    throw error("Unterminated string literal");
+                default:
+                    throw new AssertionError("Unknown lexer action " + next + ".");
+            }
         }
-        return true;
+    }
+
+    private ParseException error(String message) {
+        return new ParseException(message, input.index, input.lines, !recovering);
+    }
+
+    private static int classify(char c) {
+        return c < 128 ? CLASSES[c] : OTHER;
     }
 
     public static final class CharStream {
-        private final String input;
+        private static final int SCALAR_RUN = 16;
+
+        private CharSequence input;
+        private SymbolTable symbols;
+        private final LineIndex lines;
+        private boolean utf8;
+        private ByteBuffer bytes;
+        private int offset;
+        private int end;
         private int index = 0;
         private int length = 0;
 
-        public CharStream(String input) {
+        public CharStream(CharSequence input) {
+            this(input, 0, new SymbolTable(), new LineIndex());
+        }
+
+        private CharStream(CharSequence input, int index, SymbolTable symbols, LineIndex lines) {
+            this.lines = lines;
+            reset(input, index, symbols);
+        }
+
+        /**
+         * Restarts the stream at {@code index} of a new input.
+         */
+        private void reset(CharSequence input, int index, SymbolTable symbols) {
             this.input = input;
+            this.symbols = symbols;
+            this.utf8 = input instanceof ByteSequence;
+            this.bytes = VECTORIZED && input instanceof ByteSequence ? ((ByteSequence) input).getBuffer() : null;
+            this.offset = bytes != null ? ((ByteSequence) input).getOffset() : 0;
+            this.end = input.length();
+            this.index = index;
+            this.length = 0;
         }
 
         public boolean has(int offset) {
-            return index + offset < input.length();
+            return index + offset < end;
         }
 
         public char get(int offset) {
@@ -197,10 +793,171 @@ public class Lexer {
             length = 0;
         }
 
-        public Token emit(Token.Type type) {
+        /**
+         * Advances past the run of characters starting at the current one
+         * which are members of {@code run}. Most runs are short, so the first
+         * {@link #SCALAR_RUN} chars are checked one at a time; longer runs in
+         * byte-backed input continue a whole vector at a time when the Vector
+         * API is enabled.
+         */
+        private void advanceRun(int run) {
+            int i = scan(index, Math.min(end, index + SCALAR_RUN), run);
+            if (bytes != null && i == index + SCALAR_RUN) {
+                switch (run) {
+                    case RUN_WHITESPACE:
+                        int from = i;
+                        i = VectorRuns.whitespace(bytes, offset + i, offset + end) - offset;
+                        addLines(from, i);
+                        break;
+                    case RUN_IDENTIFIER:
+                        i = VectorRuns.identifier(bytes, offset + i, offset + end) - offset;
+                        break;
+                    case RUN_DIGITS:
+                        i = VectorRuns.digits(bytes, offset + i, offset + end) - offset;
+                        break;
+                    default:
+                        throw new AssertionError("Unknown run " + run + ".");
+                }
+            }
+            i = scan(i, end, run);
+            length += i - index;
+            index = i;
+        }
+
+        /**
+         * Records the start of every line following a line break in
+         * {@code [from, to)}.
+         */
+        private void addLines(int from, int to) {
+            for (int i = from; i < to; i++) {
+                addLine(input.charAt(i), i + 1);
+            }
+        }
+
+        /**
+         * Records a line start at {@code next} if {@code c}, the char before
+         * it, ends a line. A {@code \r} followed by {@code \n} does not.
+         */
+        private void addLine(char c, int next) {
+            if (c == '\n' || c == '\r' && (next == end || input.charAt(next) != '\n')) {
+                lines.add(next);
+            }
+        }
+
+        /**
+         * Consumes the rest of a UTF-8 sequence once its first byte has been
+         * consumed, so that it counts as one character (and a supplementary
+         * character as two, like its surrogate pair in a String). This only
+         * matters for byte-backed input, in character literals.
+         */
+        private void advanceSequence() {
+            char lead = input.charAt(index - 1);
+            int continuations = lead >= 0xF0 ? 1 : 2;
+            while (lead >= 0x80 && continuations-- > 0 && index < end && (input.charAt(index) & 0xC0) == 0x80) {
+                advance();
+            }
+        }
+
+        private int scan(int i, int limit, int run) {
+            if (run == RUN_WHITESPACE) {
+                return scanWhitespace(i, limit);
+            }
+            while (i < limit) {
+                char c = input.charAt(i);
+                if (c >= 128 || (RUN_MEMBERS[c] & run) == 0) {
+                    break;
+                }
+                i++;
+            }
+            return i;
+        }
+
+        /**
+         * Scans a whitespace run like {@link #scan(int, int, int)}, recording
+         * the line breaks in it.
+         */
+        private int scanWhitespace(int i, int limit) {
+            while (i < limit) {
+                char c = input.charAt(i);
+                if (c == ' ') {
+                    i++;
+                } else if (c < 128 && (RUN_MEMBERS[c] & RUN_WHITESPACE) != 0) {
+                    addLine(c, ++i);
+                } else {
+                    break;
+                }
+            }
+            return i;
+        }
+
+        /**
+         * Rewinds to the start of the current token.
+         */
+        public void reset() {
+            index -= length;
+            length = 0;
+        }
+
+        /**
+         * Emits the current token. Identifiers get their interned literal;
+         * any other token is a view over the input whose literal is not
+         * copied until it is requested.
+         */
+        public Token emit(Token.Kind kind) {
             int start = index - length;
             skip();
-            return new Token(type, input.substring(start, index), start);
+            if (kind == Token.Kind.IDENTIFIER) {
+                return new Token(kind, symbols.intern(input, start, index), start);
+            }
+            return new Token(kind, input, start, index);
+        }
+
+        /**
+         * Emits the current token with the kind its type and literal give,
+         * as {@link Token#Token(Token.Type, String, int)} does, so a keyword
+         * or an operator still gets its own kind.
+         */
+        public Token emit(Token.Type type) {
+            return emit(Token.Kind.of(type, input.subSequence(index - length, index).toString()));
+        }
+    }
+
+    /**
+     * A trie over ASCII literals stored as a flat child table, used to resolve
+     * keywords and operators to their {@link Token.Kind} without allocating.
+     */
+    private static final class Trie {
+
+        static final int NONE = 0;
+        static final int ROOT = 1;
+
+        private short[] children = new short[128 * 8];
+        private Token.Kind[] kinds = new Token.Kind[8];
+        private int nodes = 2;
+
+        void insert(String literal, Token.Kind kind) {
+            int node = ROOT;
+            for (int i = 0; i < literal.length(); i++) {
+                int slot = node * 128 + literal.charAt(i);
+                if (children[slot] == NONE) {
+                    if (nodes == kinds.length) {
+                        children = Arrays.copyOf(children, children.length * 2);
+                        kinds = Arrays.copyOf(kinds, kinds.length * 2);
+                    }
+                    children[slot] = (short) nodes++;
+                }
+                node = children[slot];
+            }
+            kinds[node] = kind;
+        }
+
+        int child(int node, char c) {
+            return c < 128 ? children[node * 128 + c] : NONE;
         }
+
+        Token.Kind kind(int node) {
+            return kinds[node];
+        }
+
     }
 }
@@ -0,0 +1,128 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Maps char offsets in a source to 1-based lines and columns, for
+ * diagnostics. The index is the sorted array of offsets at which lines
+ * start, so a lookup is a binary search.
+ *
+ * The {@link Lexer} records line starts as a side effect of skipping
+ * whitespace (the only place a line break can occur), so the index of a
+ * lexed source costs no extra pass. An index which was not recorded, see
+ * {@link #of(CharSequence)}, scans its source on the first lookup instead.
+ * A line break is {@code \n}, {@code \r\n} or a lone {@code \r}.
+ */
+public final class LineIndex {
+
+    private CharSequence source;
+    private int[] starts = new int[16];
+    private int count = 1;
+
+    LineIndex() {}
+
+    private LineIndex(CharSequence source) {
+        this.source = source;
+    }
+
+    /**
+     * Returns an index over the source which is only built when it is
+     * first used.
+     */
+    public static LineIndex of(CharSequence source) {
+        return new LineIndex(source);
+    }
+
+    public int getLineCount() {
+        scan();
+        return count;
+    }
+
+    /**
+     * Returns the offset at which a 1-based line starts.
+     */
+    public int getLineStart(int line) {
+        scan();
+        if (line < 1 || line > count) {
+            throw new IndexOutOfBoundsException("Line: " + line + ", Lines: " + count);
+        }
+        return starts[line - 1];
+    }
+
+    /**
+     * Returns the 1-based line of an offset.
+     */
+    public int getLine(int index) {
+        scan();
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (starts[middle] <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low;
+    }
+
+    /**
+     * Returns the 1-based column of an offset, counting every char
+     * (including a tab) as one column.
+     */
+    public int getColumn(int index) {
+        return index - starts[getLine(index) - 1] + 1;
+    }
+
+    /**
+     * Records that a line starts at an offset. Offsets past the last line
+     * start are appended and any others ignored, so ranges which were
+     * recorded twice, such as the overlap of two lexed chunks, merge cleanly.
+     */
+    void add(int start) {
+        if (start <= starts[count - 1]) {
+            return;
+        }
+        if (count == starts.length) {
+            starts = Arrays.copyOf(starts, count * 2);
+        }
+        starts[count++] = start;
+    }
+
+    /**
+     * Clears the index for a new source, keeping its capacity.
+     */
+    void clear() {
+        source = null;
+        count = 1;
+    }
+
+    /**
+     * Records the line starts of another index which fall in
+     * {@code [from, to)}, shifted by {@code shift}.
+     */
+    void append(LineIndex other, int from, int to, int shift) {
+        other.scan();
+        for (int i = 1; i < other.count; i++) {
+            if (other.starts[i] >= from && other.starts[i] < to) {
+                add(other.starts[i] + shift);
+            }
+        }
+    }
+
+    private void scan() {
+        if (source == null) {
+            return;
+        }
+        CharSequence source = this.source;
+        this.source = null;
+        for (int i = 0; i < source.length(); i++) {
+            char c = source.charAt(i);
+            if (c == '\n' || c == '\r' && (i + 1 == source.length() || source.charAt(i + 1) != '\n')) {
+                add(i + 1);
+            }
+        }
+    }
+
+}
@@ -0,0 +1,74 @@
+package plc.project;
+
+import java.math.BigDecimal;
+import java.math.BigInteger;
+
+/**
+ * The primitive payload of an integer or decimal token, read straight from
+ * the source when the lexer emits the token, so that the parser creates a
+ * {@link BigInteger} or {@link BigDecimal} from a {@code long} instead of
+ * copying the literal into a string and parsing it again.
+ *
+ * An integer of up to 18 digits is stored as its value. A decimal of up to 17
+ * digits is stored as its unscaled value shifted left by {@link #SCALE_BITS},
+ * with the scale (the number of digits after the point) in the low bits.
+ * Longer literals have no payload ({@link #NONE}) and are parsed from text.
+ */
+final class Numbers {
+
+    static final long NONE = Long.MIN_VALUE;
+
+    private static final int SCALE_BITS = 5;
+    private static final int INTEGER_DIGITS = 18;
+    private static final int DECIMAL_DIGITS = 17;
+
+    private Numbers() {}
+
+    /**
+     * Returns the payload of the literal at {@code [start, end)} of the
+     * source, or {@link #NONE} if the token is not a number or too long.
+     */
+    static long parse(Token.Kind kind, CharSequence source, int start, int end) {
+        if (kind != Token.Kind.INTEGER && kind != Token.Kind.DECIMAL || start == end) {
+            return NONE;
+        }
+        int i = start;
+        char sign = source.charAt(i);
+        if (sign == '+' || sign == '-') {
+            i++;
+        }
+        long value = 0;
+        int digits = 0;
+        int scale = -1;
+        for (; i < end; i++) {
+            char c = source.charAt(i);
+            if (c == '.' && scale < 0) {
+                scale = 0;
+                continue;
+            } else if (c < '0' || c > '9') {
+                return NONE;
+            }
+            if (++digits > INTEGER_DIGITS) {
+                return NONE;
+            }
+            value = value * 10 + (c - '0');
+            if (scale >= 0) {
+                scale++;
+            }
+        }
+        value = sign == '-' ? -value : value;
+        if (kind == Token.Kind.INTEGER) {
+            return digits > 0 && digits <= INTEGER_DIGITS && scale < 0 ? value : NONE;
+        }
+        return digits <= DECIMAL_DIGITS && scale > 0 ? value << SCALE_BITS | scale : NONE;
+    }
+
+    static BigInteger integer(long payload) {
+        return BigInteger.valueOf(payload);
+    }
+
+    static BigDecimal decimal(long payload) {
+        return BigDecimal.valueOf(payload >> SCALE_BITS, (int) (payload & ((1 << SCALE_BITS) - 1)));
+    }
+
+}
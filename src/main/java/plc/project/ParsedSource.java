@@ -0,0 +1,141 @@
+package plc.project;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.function.IntConsumer;
+
+/**
+ * A parsed source which remembers the token range of each field and method,
+ * so that after an edit only the member containing it is parsed again.
+ *
+ * If an edit lies strictly inside a single field or method, between its
+ * leading {@code LET} or {@code DEF} and its closing {@code ;} or
+ * {@code END}, and those tokens survive the edit, {@link #reparse} parses
+ * just that member and reuses every other {@link Ast.Field} and
+ * {@link Ast.Method} by identity, so anything keyed on those nodes stays
+ * valid. Otherwise, including when the edited member now ends somewhere
+ * else or fails to parse, it falls back to parsing the whole source. Either
+ * way, the AST (or the exception) is the same as that of a full parse.
+ */
+public final class ParsedSource {
+
+    private final TokenBuffer tokens;
+    private final Ast.Source ast;
+    // The token position after each field and then each method, increasing.
+    private final int[] ends;
+
+    private ParsedSource(TokenBuffer tokens, Ast.Source ast, int[] ends) {
+        this.tokens = tokens;
+        this.ast = ast;
+        this.ends = ends;
+    }
+
+    public static ParsedSource parse(TokenBuffer tokens) throws ParseException {
+        Ends ends = new Ends();
+        Ast.Source ast = new Parser(tokens).parseSource(ends);
+        return new ParsedSource(tokens, ast, Arrays.copyOf(ends.ends, ends.count));
+    }
+
+    public TokenBuffer getTokens() {
+        return tokens;
+    }
+
+    public Ast.Source getAst() {
+        return ast;
+    }
+
+    /**
+     * Replaces {@code removed} chars at {@code offset} of the source with
+     * {@code text}, re-lexing and reparsing incrementally.
+     */
+    public ParsedSource edit(int offset, int removed, CharSequence text) throws ParseException {
+        return reparse(Lexer.relex(tokens, offset, removed, text), offset, removed, text.length());
+    }
+
+    /**
+     * Parses {@code tokens}, which must be the result of
+     * {@link Lexer#relex(TokenBuffer, CharSequence, int, int, int)} of this
+     * source's tokens with {@code removed} chars at {@code offset} replaced
+     * by {@code inserted} new ones.
+     */
+    public ParsedSource reparse(TokenBuffer tokens, int offset, int removed, int inserted) throws ParseException {
+        int low = 0;
+        int high = ends.length;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (this.tokens.getIndex(ends[middle] - 1) < offset) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        if (low < ends.length) {
+            ParsedSource source = reparse(tokens, low, offset, removed, inserted);
+            if (source != null) {
+                return source;
+            }
+        }
+        return parse(tokens);
+    }
+
+    /**
+     * Reparses the given member, returning null if the edit is not strictly
+     * inside of it or the new member does not parse to the same end.
+     */
+    private ParsedSource reparse(TokenBuffer tokens, int member, int offset, int removed, int inserted) {
+        int first = member == 0 ? 0 : ends[member - 1];
+        int last = ends[member] - 1;
+        int shift = tokens.size() - this.tokens.size();
+        int delta = inserted - removed;
+        if (this.tokens.getIndex(first) + this.tokens.getLength(first) >= offset
+                || this.tokens.getIndex(last) < offset + removed
+                || last + shift <= first || last + shift >= tokens.size()
+                || tokens.getKind(first) != this.tokens.getKind(first)
+                || tokens.getIndex(first) != this.tokens.getIndex(first)
+                || tokens.getKind(last + shift) != this.tokens.getKind(last)
+                || tokens.getIndex(last + shift) != this.tokens.getIndex(last) + delta) {
+            return null;
+        }
+        Parser parser = new Parser(tokens, first, last + shift + 1);
+        List<Ast.Field> fields = ast.getFields();
+        List<Ast.Method> methods = ast.getMethods();
+        try {
+            if (member < fields.size()) {
+                Ast.Field field = parser.parseField();
+                fields = new ArrayList<>(fields);
+                fields.set(member, field);
+            } else {
+                Ast.Method method = parser.parseMethod();
+                methods = new ArrayList<>(methods);
+                methods.set(member - fields.size(), method);
+            }
+        } catch (ParseException e) {
+            return null;
+        }
+        if (parser.position() != last + shift + 1) {
+            return null;
+        }
+        int[] ends = this.ends.clone();
+        for (int i = member; i < ends.length; i++) {
+            ends[i] += shift;
+        }
+        return new ParsedSource(tokens, new Ast.Source(fields, methods), ends);
+    }
+
+    private static final class Ends implements IntConsumer {
+
+        private int[] ends = new int[16];
+        private int count = 0;
+
+        @Override
+        public void accept(int end) {
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            ends[count++] = end;
+        }
+
+    }
+
+}
@@ -3,462 +3,1373 @@ package plc.project;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.BitSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.function.IntConsumer;
+import java.util.function.Supplier;
 
 public final class Parser {
 
+    // Binary operator precedences, indexed by Token.Kind ordinal. Any other
+    // kind is 0, below every level, so it ends a chain of operators.
+    private static final int LOGICAL = 1;
+    private static final int COMPARISON = 2;
+    private static final int ADDITIVE = 3;
+    private static final int MULTIPLICATIVE = 4;
+
+    private static final byte[] PRECEDENCE = new byte[Token.Kind.values().length];
+
+    // Fewest tokens worth parsing as a separate task in parseParallel().
+    private static final int MIN_BATCH = 1 << 14;
+
+    static {
+        precedence(LOGICAL, Token.Kind.AND, Token.Kind.OR);
+        precedence(COMPARISON, Token.Kind.LESS, Token.Kind.LESS_EQUAL, Token.Kind.GREATER,
+                Token.Kind.GREATER_EQUAL, Token.Kind.EQUAL, Token.Kind.NOT_EQUAL);
+        precedence(ADDITIVE, Token.Kind.PLUS, Token.Kind.MINUS);
+        precedence(MULTIPLICATIVE, Token.Kind.STAR, Token.Kind.SLASH);
+    }
+
+    private static void precedence(int precedence, Token.Kind... kinds) {
+        for (Token.Kind kind : kinds) {
+            PRECEDENCE[kind.ordinal()] = (byte) precedence;
+        }
+    }
+
+    // Levels below every binary operator, for parseSecondaryExpression()
+    // and parsePrimaryExpression().
+    private static final int SECONDARY = 5;
+    private static final int PRIMARY = 6;
+
+    // The frames of parseBinaryExpression() besides pending operators,
+    // which are Token.Kind ordinals.
+    private static final int GROUP = -1;
+    private static final int CALL = -2;
+
     private final TokenStream tokens;
+    private final SymbolTable symbols;
+    private final ConstantPool constants;
+    private final LineIndex lines;
+    private List<ParseException> errors;
+
+    // The explicit stacks of parseBinaryExpression(): pending operands, and
+    // frames, with the call of each CALL frame alongside. Popped operands
+    // are not cleared, since they are part of the AST anyway.
+    private Ast.Expression[] operands = new Ast.Expression[16];
+    private int operandCount = 0;
+    private int[] frames = new int[16];
+    private Call[] calls = new Call[16];
+    private int frameCount = 0;
 
     public Parser(List<Token> tokens) {
-        this.tokens = new TokenStream(tokens);
+        this(TokenSource.of(tokens));
+    }
+
+    public Parser(TokenSource source) {
+        this(source, new SymbolTable());
+    }
+
+    /**
+     * Creates a parser which interns every name in the AST in the given
+     * table, usually the one the tokens were lexed with.
+     */
+    public Parser(TokenSource source, SymbolTable symbols) {
+        this.tokens = new SourceStream(source);
+        this.symbols = symbols;
+        this.constants = symbols.getConstants();
+        this.lines = null;
+    }
+
+    public Parser(TokenBuffer buffer) {
+        this(buffer, 0, buffer.size());
+    }
+
+    /**
+     * Creates a parser over the tokens {@code [start, end)} of the buffer.
+     */
+    Parser(TokenBuffer buffer, int start, int end) {
+        this(buffer, start, end, buffer.getSymbols());
+    }
+
+    /**
+     * Creates a parser over the tokens {@code [start, end)} of the buffer
+     * which interns names in the given table instead of the buffer's.
+     */
+    private Parser(TokenBuffer buffer, int start, int end, SymbolTable symbols) {
+        this.tokens = new BufferStream(buffer, start, end, symbols);
+        this.symbols = symbols;
+        this.constants = symbols.getConstants();
+        this.lines = buffer.getLines();
     }
 
     public Ast.Source parseSource() throws ParseException {
+        return parseSource(null);
+    }
+
+    /**
+     * Parses the source like {@link #parseSource()}, passing the token
+     * position after each field and then each method to {@code ends}.
+     */
+    Ast.Source parseSource(IntConsumer ends) throws ParseException {
         List<Ast.Field> fields = new ArrayList<>();
         List<Ast.Method> methods = new ArrayList<>();
 
-        while (peek("LET")) {
+        while (peek(Token.Kind.LET)) {
             fields.add(parseField());
+            if (ends != null) {
+                ends.accept(tokens.position());
+            }
         }
 
-        while (peek("DEF")) {
+        while (peek(Token.Kind.DEF)) {
             methods.add(parseMethod());
+            if (ends != null) {
+                ends.accept(tokens.position());
+            }
+        }
+
+        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * Parses the source like {@link #parseSource()}, except that only the
+     * signature of each method is parsed. Its body is skipped by matching
+     * up the blocks in it, and parsed from the buffer the first time
+     * {@link Ast.Method#getStatements()} is called, so that only the
+     * methods which are used cost a parse and the memory of their AST.
+     *
+     * An error in a body is thrown from there instead of from here, and a
+     * body which is not valid may be skipped to a different {@code END}
+     * than the parser would have stopped at, so that the methods after it
+     * fail or differ as well. The names in a body are interned in the
+     * symbol table of the buffer when it is parsed, so like the parser the
+     * methods must not be used from several threads at once.
+     */
+    public static Ast.Source parseLazily(TokenBuffer tokens) throws ParseException {
+        Parser parser = new Parser(tokens);
+        List<Ast.Field> fields = new ArrayList<>();
+        while (parser.peek(Token.Kind.LET)) {
+            fields.add(parser.parseField());
+        }
+        List<Ast.Method> methods = new ArrayList<>();
+        while (parser.peek(Token.Kind.DEF)) {
+            methods.add(parser.parseMethod(tokens));
+        }
+        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * Parses the methods in batches on the common pool; see
+     * {@link #parseParallel(TokenBuffer, ForkJoinPool)}.
+     */
+    public static Ast.Source parseParallel(TokenBuffer tokens) throws ParseException {
+        return parseParallel(tokens, ForkJoinPool.commonPool());
+    }
+
+    /**
+     * Parses the source like {@link #parseSource()}, parsing batches of
+     * methods concurrently on the given pool, with the same AST and the same
+     * first {@link ParseException} as the sequential parser.
+     *
+     * The fields are parsed first. A pre-scan then splits the rest into
+     * methods at the {@code END} which closes each {@code DEF}, counting the
+     * {@code DO} of methods and statements and the {@code FOR} of loops as
+     * opening a block. Each batch is parsed with its own cursor, checking
+     * that every method ends exactly where the scan said. The scan is only a
+     * guess, since keywords can be used as names in expressions, so from the
+     * first method which fails or ends elsewhere the rest is parsed again
+     * sequentially, which also throws the same exception as
+     * {@link #parseSource()} would.
+     *
+     * A {@link SymbolTable} is not thread-safe, so each batch interns names
+     * in its own table over the one of the tokens (see
+     * {@link SymbolTable#SymbolTable(SymbolTable)}), which therefore gives
+     * the same canonical names but assigns ids to the names first seen in
+     * methods in whatever order the batches reach them.
+     */
+    public static Ast.Source parseParallel(TokenBuffer tokens, ForkJoinPool pool) throws ParseException {
+        Parser parser = new Parser(tokens);
+        List<Ast.Field> fields = new ArrayList<>();
+        while (parser.peek(Token.Kind.LET)) {
+            fields.add(parser.parseField());
+        }
+        int start = parser.tokens.position();
+        int batches = Math.min(pool.getParallelism() * 4, (tokens.size() - start) / MIN_BATCH);
+        int[] ends = batches > 1 ? scanMethods(tokens, start) : new int[0];
+        int[] bounds = batch(ends, start, batches);
+        List<Ast.Method> methods = new ArrayList<>(ends.length);
+        if (bounds.length <= 2) {
+            while (parser.peek(Token.Kind.DEF)) {
+                methods.add(parser.parseMethod());
+            }
+            return new Ast.Source(fields, methods);
+        }
+        Ast.Method[] results = new Ast.Method[ends.length];
+        int[] parsed = new int[bounds.length - 1];
+        AtomicBoolean failed = new AtomicBoolean();
+        List<ForkJoinTask<?>> tasks = new ArrayList<>(bounds.length - 1);
+        for (int i = 0; i + 1 < bounds.length; i++) {
+            int batch = i;
+            tasks.add(pool.submit(() -> {
+                parsed[batch] = parseMethods(tokens, ends, start, bounds[batch], bounds[batch + 1], results, failed);
+            }));
         }
+        for (int i = 0; i < tasks.size(); i++) {
+            tasks.get(i).join();
+            for (int method = bounds[i]; method < parsed[i]; method++) {
+                methods.add(results[method]);
+            }
+            if (parsed[i] < bounds[i + 1]) {
+                // The batches share the symbol table, so they must be done
+                // before the rest is parsed with it (or it is returned).
+                failed.set(true);
+                for (int j = i + 1; j < tasks.size(); j++) {
+                    tasks.get(j).quietlyJoin();
+                }
+                Parser rest = new Parser(tokens, parsed[i] == 0 ? start : ends[parsed[i] - 1], tokens.size());
+                while (rest.peek(Token.Kind.DEF)) {
+                    methods.add(rest.parseMethod());
+                }
+                break;
+            }
+        }
+        return new Ast.Source(fields, methods);
+    }
+
+    /**
+     * Returns the token position after each method from {@code start} on,
+     * as far as the {@code DO}, {@code FOR} and {@code END} tokens tell. A
+     * method which is never closed ends at the end of the tokens.
+     */
+    private static int[] scanMethods(TokenBuffer tokens, int start) {
+        int[] ends = new int[16];
+        int count = 0;
+        int i = start;
+        while (i < tokens.size() && tokens.getKind(i) == Token.Kind.DEF) {
+            int depth = 0;
+            while (++i < tokens.size()) {
+                Token.Kind kind = tokens.getKind(i);
+                if (kind == Token.Kind.DO || kind == Token.Kind.FOR) {
+                    depth++;
+                } else if (kind == Token.Kind.END && --depth <= 0) {
+                    i++;
+                    break;
+                }
+            }
+            if (count == ends.length) {
+                ends = Arrays.copyOf(ends, count * 2);
+            }
+            ends[count++] = i;
+        }
+        return Arrays.copyOf(ends, count);
+    }
 
+    /**
+     * Splits the methods into up to {@code batches} runs of about the same
+     * number of tokens, returning the index of the first method of each run
+     * followed by the number of methods.
+     */
+    private static int[] batch(int[] ends, int start, int batches) {
+        int[] bounds = new int[Math.max(1, Math.min(batches, ends.length)) + 1];
+        int count = 1;
+        long total = ends.length == 0 ? 0 : ends[ends.length - 1] - start;
+        for (int method = 0; method + 1 < ends.length && count < bounds.length - 1; method++) {
+            if (ends[method] - start >= total * count / (bounds.length - 1)) {
+                bounds[count++] = method + 1;
+            }
+        }
+        bounds[count++] = ends.length;
+        return Arrays.copyOf(bounds, count);
+    }
+
+    /**
+     * Parses the methods {@code [from, to)} into {@code results}, returning
+     * the index of the first one which fails or does not end where the scan
+     * said, or {@code to} if none does. Gives up early once another batch
+     * has failed.
+     */
+    private static int parseMethods(TokenBuffer tokens, int[] ends, int start, int from, int to,
+                                    Ast.Method[] results, AtomicBoolean failed) {
+        Parser parser = new Parser(tokens, from == 0 ? start : ends[from - 1], ends[to - 1],
+                new SymbolTable(tokens.getSymbols()));
+        for (int method = from; method < to && !failed.get(); method++) {
+            try {
+                results[method] = parser.parseMethod();
+            } catch (ParseException e) {
+                return method;
+            }
+            if (parser.tokens.position() != ends[method]) {
+                return method;
+            }
+        }
+        return to;
+    }
+
+    /**
+     * Parses the whole source like {@link #parseSource()}, but instead of
+     * throwing at the first error it records the exception in
+     * {@code errors}, skips ahead to a synchronisation point and carries on,
+     * returning whatever could be parsed. A failed statement is skipped
+     * past the next {@code ;}, or up to the next {@code LET} or the
+     * {@code END} or {@code ELSE} of its block; a failed field or method up
+     * to the next top-level {@code LET} or {@code DEF}. A block missing its
+     * {@code END} is reported and kept. Unlike {@link #parseSource()}, fields
+     * may follow methods and any other token left over at the top level is
+     * an error. Clean input gives the same AST. The recorded exceptions have
+     * no stack traces.
+     */
+    public Ast.Source parseRecovering(List<ParseException> errors) {
+        this.errors = errors;
+        List<Ast.Field> fields = new ArrayList<>();
+        List<Ast.Method> methods = new ArrayList<>();
+        while (tokens.has(0)) {
+            int start = tokens.position();
+            try {
+                if (peek(Token.Kind.LET)) {
+                    fields.add(parseField());
+                } else if (peek(Token.Kind.DEF)) {
+                    methods.add(parseMethod());
+                } else {
+                    throw error("Expected 'LET' or 'DEF'.", tokens.getIndex(0));
+                }
+            } catch (ParseException e) {
+                errors.add(e);
+                if (tokens.position() == start) {
+                    tokens.advance();
+                }
+                synchronize(0, true);
+            }
+        }
         return new Ast.Source(fields, methods);
     }
 
+    /**
+     * Returns the position of the next token, counting from the start of
+     * the token source.
+     */
+    int position() {
+        return tokens.position();
+    }
+
     public Ast.Field parseField() throws ParseException {
-        consume("LET", "Expected 'LET' at the beginning of a field declaration.");
+        consume(Token.Kind.LET, "Expected 'LET' at the beginning of a field declaration.");
 
-        boolean isConst = match("CONST");
+        boolean isConst = match(Token.Kind.CONST);
 
-        Token identifierToken = consume(Token.Type.IDENTIFIER, "Expected identifier in field declaration.");
-        String identifier = identifierToken.getLiteral();
+        String identifier = consumeName("Expected identifier in field declaration.");
 
-        if (match(":")) {
+        if (match(Token.Kind.COLON)) {
             consume(Token.Type.IDENTIFIER, "Expected type name after ':'.");
         }
 
         Ast.Expression initializer = null;
-        if (match("=")) {
+        if (match(Token.Kind.ASSIGN)) {
             initializer = parseExpression();
         }
 
-        consume(";", "Expected ';' after field declaration.");
+        consume(Token.Kind.SEMICOLON, "Expected ';' after field declaration.");
 
         return new Ast.Field(identifier, isConst, Optional.ofNullable(initializer));
     }
 
     public Ast.Method parseMethod() throws ParseException {
-        consume("DEF", "Expected 'DEF' at the beginning of a method declaration.");
+        return parseMethod(null);
+    }
 
-        Token nameToken = consume(Token.Type.IDENTIFIER, "Expected method name after 'DEF'.");
-        String name = nameToken.getLiteral();
+    /**
+     * Parses a method, or with a buffer only its signature, skipping the
+     * body for the buffer to parse on first use.
+     */
+    private Ast.Method parseMethod(TokenBuffer lazy) throws ParseException {
+        consume(Token.Kind.DEF, "Expected 'DEF' at the beginning of a method declaration.");
 
-        consume("(", "Expected '(' after method name.");
+        String name = consumeName("Expected method name after 'DEF'.");
+
+        consume(Token.Kind.LEFT_PAREN, "Expected '(' after method name.");
 
         List<String> parameters = new ArrayList<>();
-        if (!peek(")")) {
+        if (!peek(Token.Kind.RIGHT_PAREN)) {
             do {
-                Token paramToken = consume(Token.Type.IDENTIFIER, "Expected parameter name.");
-                parameters.add(paramToken.getLiteral());
+                parameters.add(consumeName("Expected parameter name."));
 
-                if (match(":")) {
+                if (match(Token.Kind.COLON)) {
                     consume(Token.Type.IDENTIFIER, "Expected parameter type name after ':'.");
                 }
-            } while (match(","));
+            } while (match(Token.Kind.COMMA));
         }
 
-        consume(")", "Expected ')' after parameters.");
+        consume(Token.Kind.RIGHT_PAREN, "Expected ')' after parameters.");
 
-        if (match(":")) {
+        if (match(Token.Kind.COLON)) {
             consume(Token.Type.IDENTIFIER, "Expected return type name after ':'.");
         }
 
-        consume("DO", "Expected 'DO' after method parameters (and optional return type).");
+        consume(Token.Kind.DO, "Expected 'DO' after method parameters (and optional return type).");
 
-        List<Ast.Statement> statements = new ArrayList<>();
-        while (!peek("END")) {
-            statements.add(parseStatement());
+        if (lazy != null) {
+            int start = tokens.position();
+            skipBody();
+            int end = tokens.position();
+            return new Ast.Method(name, parameters, new Body(lazy, start, end));
         }
 
-        consume("END", "Expected 'END' after method body.");
+        List<Ast.Statement> statements = parseBlock();
+
+        consumeEnd("Expected 'END' after method body.");
 
         return new Ast.Method(name, parameters, statements);
     }
 
+    /**
+     * Skips the statements of a method body up to just past its
+     * {@code END}, or to the end of the input, without building them. Since
+     * keywords can be used as names, a keyword only counts where the parser
+     * would take it as one: {@code IF}, {@code FOR}, {@code WHILE},
+     * {@code END}, and {@code ELSE} of an open {@code IF}, at the start of a
+     * statement, and {@code DO} right after the condition of an {@code IF}
+     * or {@code WHILE}, that is after an operand outside of any parentheses.
+     * On valid input this ends where {@link #parseBlock()} and its
+     * {@code END} would.
+     */
+    private void skipBody() {
+        int depth = 1;
+        // The depths of the open IFs which may still have an ELSE.
+        BitSet ifs = new BitSet();
+        int parens = 0;
+        boolean header = false;
+        boolean statement = true;
+        boolean operand = false;
+        while (tokens.has(0)) {
+            Token.Kind kind = tokens.getKind(0);
+            Token.Type type = tokens.getType(0);
+            tokens.advance();
+            if (statement) {
+                statement = false;
+                operand = false;
+                if (kind == Token.Kind.END) {
+                    ifs.clear(depth);
+                    if (--depth == 0) {
+                        return;
+                    }
+                    statement = true;
+                    continue;
+                } else if (kind == Token.Kind.ELSE && ifs.get(depth)) {
+                    ifs.clear(depth);
+                    statement = true;
+                    continue;
+                } else if (kind == Token.Kind.IF || kind == Token.Kind.WHILE || kind == Token.Kind.FOR) {
+                    ifs.set(++depth, kind == Token.Kind.IF);
+                    header = kind == Token.Kind.FOR;
+                    continue;
+                } else if (kind == Token.Kind.LET || kind == Token.Kind.RETURN) {
+                    continue;
+                }
+            }
+            if (kind == Token.Kind.DO && operand && parens == 0) {
+                statement = true;
+                operand = false;
+            } else if (kind == Token.Kind.LEFT_PAREN) {
+                parens++;
+                operand = false;
+            } else if (kind == Token.Kind.RIGHT_PAREN) {
+                parens--;
+                operand = true;
+                if (header && parens == 0) {
+                    header = false;
+                    statement = true;
+                    operand = false;
+                }
+            } else if (kind == Token.Kind.SEMICOLON) {
+                statement = parens == 0;
+                operand = false;
+            } else {
+                operand = type != Token.Type.OPERATOR && type != Token.Type.ERROR;
+            }
+        }
+    }
+
     public Ast.Statement parseStatement() throws ParseException {
-        if (match("LET")) {
+        List<Block> open = new ArrayList<>();
+        Ast.Statement statement = parseStatementHead(open);
+        return statement != null ? statement : parseBlocks(open);
+    }
+
+    /**
+     * Parses a simple statement, or the header of a compound one, whose
+     * block is pushed onto {@code open} instead, returning null.
+     */
+    private Ast.Statement parseStatementHead(List<Block> open) throws ParseException {
+        if (match(Token.Kind.LET)) {
             return parseDeclarationStatement();
-        } else if (match("IF")) {
-            return parseIfStatement();
-        } else if (match("FOR")) {
-            return parseForStatement();
-        } else if (match("WHILE")) {
-            return parseWhileStatement();
-        } else if (match("RETURN")) {
+        } else if (match(Token.Kind.IF)) {
+            open.add(parseIfHeader());
+            return null;
+        } else if (match(Token.Kind.FOR)) {
+            open.add(parseForHeader());
+            return null;
+        } else if (match(Token.Kind.WHILE)) {
+            open.add(parseWhileHeader());
+            return null;
+        } else if (match(Token.Kind.RETURN)) {
             return parseReturnStatement();
         } else {
             Ast.Expression expression = parseExpression();
-            if (match("=")) {
+            if (match(Token.Kind.ASSIGN)) {
                 Ast.Expression value = parseExpression();
-                consume(";", "Expected ';' after assignment.");
+                consume(Token.Kind.SEMICOLON, "Expected ';' after assignment.");
                 return new Ast.Statement.Assignment(expression, value);
             } else {
-                consume(";", "Expected ';' after expression.");
+                consume(Token.Kind.SEMICOLON, "Expected ';' after expression.");
                 return new Ast.Statement.Expression(expression);
             }
         }
     }
 
     public Ast.Statement.Declaration parseDeclarationStatement() throws ParseException {
-        Token identifierToken = consume(Token.Type.IDENTIFIER, "Expected identifier in declaration.");
-        String identifier = identifierToken.getLiteral();
+        String identifier = consumeName("Expected identifier in declaration.");
 
         Optional<String> typeName = Optional.empty();
-        if (match(":")) {
-            Token typeToken = consume(Token.Type.IDENTIFIER, "Expected type name after ':'.");
-            typeName = Optional.of(typeToken.getLiteral());
+        if (match(Token.Kind.COLON)) {
+            typeName = Optional.of(consumeName("Expected type name after ':'."));
         }
 
         Ast.Expression initializer = null;
-        if (match("=")) {
+        if (match(Token.Kind.ASSIGN)) {
             initializer = parseExpression();
         }
 
-        consume(";", "Expected ';' after variable declaration.");
+        consume(Token.Kind.SEMICOLON, "Expected ';' after variable declaration.");
 
         return new Ast.Statement.Declaration(identifier, typeName, Optional.ofNullable(initializer));
     }
 
     public Ast.Statement.If parseIfStatement() throws ParseException {
-        Ast.Expression condition = parseExpression();
-
-        consume("DO", "Expected 'DO' after if condition.");
-
-        List<Ast.Statement> thenStatements = new ArrayList<>();
-        while (!peek("ELSE") && !peek("END")) {
-            thenStatements.add(parseStatement());
-        }
+        List<Block> open = new ArrayList<>();
+        open.add(parseIfHeader());
+        return (Ast.Statement.If) parseBlocks(open);
+    }
 
-        List<Ast.Statement> elseStatements = new ArrayList<>();
-        if (match("ELSE")) {
-            while (!peek("END")) {
-                elseStatements.add(parseStatement());
-            }
-        }
+    private Block parseIfHeader() throws ParseException {
+        Ast.Expression condition = parseExpression();
 
-        consume("END", "Expected 'END' after if statement.");
+        consume(Token.Kind.DO, "Expected 'DO' after if condition.");
 
-        return new Ast.Statement.If(condition, thenStatements, elseStatements);
+        return new Block(Token.Kind.IF, null, condition, null);
     }
 
     public Ast.Statement.For parseForStatement() throws ParseException {
-        consume("(", "Expected '(' after 'FOR'.");
+        List<Block> open = new ArrayList<>();
+        open.add(parseForHeader());
+        return (Ast.Statement.For) parseBlocks(open);
+    }
+
+    private Block parseForHeader() throws ParseException {
+        consume(Token.Kind.LEFT_PAREN, "Expected '(' after 'FOR'.");
 
         Ast.Statement initializer = null;
-        if (!peek(";")) {
-            if (peek("LET")) {
+        if (!peek(Token.Kind.SEMICOLON)) {
+            if (peek(Token.Kind.LET)) {
                 initializer = parseDeclarationStatement();
             } else {
                 Ast.Expression receiver = parseExpression();
-                consume("=", "Expected '=' after for-loop initializer.");
+                consume(Token.Kind.ASSIGN, "Expected '=' after for-loop initializer.");
                 Ast.Expression value = parseExpression();
-                consume(";", "Expected ';' after for-loop initializer.");
+                consume(Token.Kind.SEMICOLON, "Expected ';' after for-loop initializer.");
                 initializer = new Ast.Statement.Assignment(receiver, value);
             }
         } else {
-            consume(";", "Expected ';' after for-loop initializer.");
+            consume(Token.Kind.SEMICOLON, "Expected ';' after for-loop initializer.");
         }
 
         Ast.Expression condition = null;
-        if (!peek(";")) {
+        if (!peek(Token.Kind.SEMICOLON)) {
             condition = parseExpression();
         }
-        consume(";", "Expected ';' after for-loop condition.");
+        consume(Token.Kind.SEMICOLON, "Expected ';' after for-loop condition.");
 
         Ast.Statement.Assignment updater = null;
-        if (!peek(")")) {
+        if (!peek(Token.Kind.RIGHT_PAREN)) {
             Ast.Expression updaterExpr = parseExpression();
             if ((updaterExpr instanceof Ast.Expression.Access) || (updaterExpr instanceof Ast.Expression.Function)) {
-                if (match("=")) {
+                if (match(Token.Kind.ASSIGN)) {
                     Ast.Expression value = parseExpression();
                     updater = new Ast.Statement.Assignment(updaterExpr, value);
                 } else {
-                    throw new ParseException("Expected '=' in for-loop updater.",
-                            tokens.has(0) ? tokens.get(0).getIndex() : -1);
+                    throw error("Expected '=' in for-loop updater.",
+                            tokens.has(0) ? tokens.getIndex(0) : -1);
                 }
             } else {
-                throw new ParseException("Invalid for-loop updater.",
-                        tokens.has(0) ? tokens.get(0).getIndex() : -1);
+                throw error("Invalid for-loop updater.",
+                        tokens.has(0) ? tokens.getIndex(0) : -1);
             }
         }
 
-        consume(")", "Expected ')' after for-loop components.");
-
-
-        List<Ast.Statement> bodyStatements = new ArrayList<>();
-        while (!peek("END")) {
-            bodyStatements.add(parseStatement());
-        }
-
-        consume("END", "Expected 'END' after for-loop body.");
+        consume(Token.Kind.RIGHT_PAREN, "Expected ')' after for-loop components.");
 
-        return new Ast.Statement.For(initializer, condition, updater, bodyStatements);
+        return new Block(Token.Kind.FOR, initializer, condition, updater);
     }
 
     public Ast.Statement.While parseWhileStatement() throws ParseException {
-        Ast.Expression condition = parseExpression();
-
-        consume("DO", "Expected 'DO' after while condition.");
+        List<Block> open = new ArrayList<>();
+        open.add(parseWhileHeader());
+        return (Ast.Statement.While) parseBlocks(open);
+    }
 
-        List<Ast.Statement> bodyStatements = new ArrayList<>();
-        while (!peek("END")) {
-            bodyStatements.add(parseStatement());
-        }
+    private Block parseWhileHeader() throws ParseException {
+        Ast.Expression condition = parseExpression();
 
-        consume("END", "Expected 'END' after while-loop body.");
+        consume(Token.Kind.DO, "Expected 'DO' after while condition.");
 
-        return new Ast.Statement.While(condition, bodyStatements);
+        return new Block(Token.Kind.WHILE, null, condition, null);
     }
 
     public Ast.Statement.Return parseReturnStatement() throws ParseException {
         Ast.Expression value = parseExpression();
 
-        consume(";", "Expected ';' after return value.");
+        consume(Token.Kind.SEMICOLON, "Expected ';' after return value.");
 
         return new Ast.Statement.Return(value);
     }
 
+    /**
+     * Parses the statements of a method body up to its {@code END}, which is
+     * left for the caller.
+     */
+    private List<Ast.Statement> parseBlock() throws ParseException {
+        List<Block> open = new ArrayList<>();
+        Block block = new Block(null, null, null, null);
+        open.add(block);
+        parseBlocks(open);
+        return block.statements;
+    }
+
+    /**
+     * Parses the statements of the innermost block in {@code open} until
+     * the outermost one is closed, with an explicit stack instead of
+     * recursion, so that nesting is bounded only by memory. A compound
+     * statement pushes its block, and closing a block pops it and adds its
+     * statement to the enclosing one. Returns the statement of the outermost
+     * block, or null for the body of a method, whose {@code END} is left.
+     *
+     * A block ends at its {@code END}, and the then block of an {@code IF}
+     * also at an {@code ELSE}. When recovering, a statement that fails is
+     * recorded and skipped, and a block also ends at a {@code DEF} or at the
+     * end of the input.
+     */
+    private Ast.Statement parseBlocks(List<Block> open) throws ParseException {
+        while (true) {
+            Block block = open.get(open.size() - 1);
+            if (peek(Token.Kind.END) || block.kind == Token.Kind.IF && block.elseStatements == null && peek(Token.Kind.ELSE)
+                    || errors != null && (!tokens.has(0) || peek(Token.Kind.DEF))) {
+                if (block.kind == null) {
+                    return null;
+                } else if (block.kind == Token.Kind.IF && block.elseStatements == null && match(Token.Kind.ELSE)) {
+                    block.elseStatements = new ArrayList<>();
+                    continue;
+                }
+                consumeEnd(block.kind == Token.Kind.IF ? "Expected 'END' after if statement."
+                        : block.kind == Token.Kind.FOR ? "Expected 'END' after for-loop body."
+                        : "Expected 'END' after while-loop body.");
+                open.remove(open.size() - 1);
+                Ast.Statement statement = block.build();
+                if (open.isEmpty()) {
+                    return statement;
+                }
+                open.get(open.size() - 1).add(statement);
+                continue;
+            }
+            if (errors == null) {
+                Ast.Statement statement = parseStatementHead(open);
+                if (statement != null) {
+                    block.add(statement);
+                }
+                continue;
+            }
+            int start = tokens.position();
+            // The END of a FOR is still pending if its header failed.
+            int depth = peek(Token.Kind.FOR) ? 1 : 0;
+            try {
+                Ast.Statement statement = parseStatementHead(open);
+                if (statement != null) {
+                    block.add(statement);
+                }
+            } catch (ParseException e) {
+                errors.add(e);
+                if (tokens.position() == start) {
+                    tokens.advance();
+                }
+                synchronize(depth, false);
+            }
+        }
+    }
+
+    /**
+     * Consumes the {@code END} of a block. When recovering, a missing one is
+     * recorded and the block is kept as if it were there.
+     */
+    private void consumeEnd(String errorMessage) throws ParseException {
+        if (errors != null && !peek(Token.Kind.END)) {
+            errors.add(error(errorMessage, tokens.has(0) ? tokens.getIndex(0) : -1));
+        } else {
+            consume(Token.Kind.END, errorMessage);
+        }
+    }
+
+    /**
+     * Skips the tokens of a construct which failed to parse, up to just past
+     * a {@code ;} or up to (but not including) a {@code LET} or {@code DEF},
+     * or, within a block, the {@code END} or {@code ELSE} which closes it. A
+     * block opened by a {@code DO} or {@code FOR} along the way is skipped up
+     * to its {@code END}, as are {@code depth} blocks which were already open;
+     * closing the last of them ends the construct. A {@code DEF} always stops,
+     * since methods do not nest.
+     */
+    private void synchronize(int depth, boolean topLevel) {
+        while (tokens.has(0)) {
+            Token.Kind kind = tokens.getKind(0);
+            if (kind == Token.Kind.DEF) {
+                return;
+            } else if (depth == 0) {
+                if (kind == Token.Kind.LET || !topLevel && (kind == Token.Kind.END || kind == Token.Kind.ELSE)) {
+                    return;
+                } else if (kind == Token.Kind.SEMICOLON) {
+                    tokens.advance();
+                    return;
+                }
+            }
+            tokens.advance();
+            if (kind == Token.Kind.DO || kind == Token.Kind.FOR) {
+                depth++;
+            } else if (kind == Token.Kind.END && depth > 0 && --depth == 0) {
+                return;
+            }
+        }
+    }
+
     public Ast.Expression parseExpression() throws ParseException {
         return parseLogicalExpression();
     }
 
     public Ast.Expression parseLogicalExpression() throws ParseException {
-        Ast.Expression left = parseComparisonExpression();
-        while (match("&&") || match("||")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expression right = parseComparisonExpression();
-            left = new Ast.Expression.Binary(operator, left, right);
-        }
-        return left;
+        return parseBinaryExpression(LOGICAL);
     }
 
     public Ast.Expression parseComparisonExpression() throws ParseException {
-        Ast.Expression left = parseAdditiveExpression();
-        while (match("<") || match("<=") || match(">") || match(">=") || match("==") || match("!=")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expression right = parseAdditiveExpression();
-            left = new Ast.Expression.Binary(operator, left, right);
-        }
-        return left;
+        return parseBinaryExpression(COMPARISON);
     }
 
     public Ast.Expression parseAdditiveExpression() throws ParseException {
-        Ast.Expression left = parseMultiplicativeExpression();
-        while (match("+") || match("-")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expression right = parseMultiplicativeExpression();
-            left = new Ast.Expression.Binary(operator, left, right);
-        }
-        return left;
+        return parseBinaryExpression(ADDITIVE);
     }
 
     public Ast.Expression parseMultiplicativeExpression() throws ParseException {
-        Ast.Expression left = parseSecondaryExpression();
-        while (match("*") || match("/")) {
-            String operator = tokens.get(-1).getLiteral();
-            Ast.Expression right = parseSecondaryExpression();
-            left = new Ast.Expression.Binary(operator, left, right);
-        }
-        return left;
+        return parseBinaryExpression(MULTIPLICATIVE);
     }
 
     public Ast.Expression parseSecondaryExpression() throws ParseException {
-        Ast.Expression expression = parsePrimaryExpression();
-        while (true) {
-            if (match(".")) {
-                if (match(Token.Type.IDENTIFIER)) {
-                    String name = tokens.get(-1).getLiteral();
-                    if (match("(")) {
-                        List<Ast.Expression> arguments = new ArrayList<>();
-                        if (!peek(")")) {
-                            do {
-                                arguments.add(parseExpression());
-                            } while (match(","));
+        return parseBinaryExpression(SECONDARY);
+    }
+
+    public Ast.Expression parsePrimaryExpression() throws ParseException {
+        return parseBinaryExpression(PRIMARY);
+    }
+
+    /**
+     * Parses an expression whose binary operators all have at least the
+     * given precedence (so {@link #SECONDARY} parses no binary operators,
+     * and {@link #PRIMARY} no {@code .} accesses or calls either), building
+     * the same tree as one recursive method per level would.
+     *
+     * Instead of recursing, pending left operands and operators are kept on
+     * explicit stacks, as are the groups and argument lists opened by a
+     * {@code (}, so that nesting is bounded only by memory. An operator
+     * first folds the pending operators which bind at least as tightly, so
+     * every level is left-associative. The end of an expression folds the
+     * rest, and then closes the innermost group or argument, or returns the
+     * result if none is open.
+     */
+    private Ast.Expression parseBinaryExpression(int precedence) throws ParseException {
+        int frameBase = frameCount;
+        int operandBase = operandCount;
+        // The groups and argument lists which are open.
+        int open = 0;
+        try {
+            while (true) {
+                Ast.Expression operand = parseOperand();
+                if (operand == null) {
+                    open++;
+                }
+                while (operand != null) {
+                    if (open > 0 || precedence < PRIMARY) {
+                        operand = parseAccesses(operand);
+                        if (operand == null) {
+                            open++;
+                            break;
                         }
-                        consume(")", "Expected ')' after function arguments.");
-                        expression = new Ast.Expression.Function(Optional.of(expression), name, arguments);
+                    }
+                    int next = tokens.has(0) ? PRECEDENCE[tokens.getKind(0).ordinal()] : 0;
+                    if (next > 0 && next >= (open > 0 ? LOGICAL : precedence)) {
+                        pushOperand(fold(operand, next, frameBase));
+                        pushFrame(tokens.getKind(0).ordinal(), null);
+                        tokens.advance();
+                        break;
+                    }
+                    operand = fold(operand, LOGICAL, frameBase);
+                    if (open == 0) {
+                        return operand;
+                    } else if (frames[frameCount - 1] == GROUP) {
+                        consume(Token.Kind.RIGHT_PAREN, "Expected ')' after expression.");
+                        frameCount--;
+                        open--;
+                        operand = new Ast.Expression.Group(operand);
                     } else {
-                        expression = new Ast.Expression.Access(Optional.of(expression), name);
+                        Call call = calls[frameCount - 1];
+                        call.arguments.add(operand);
+                        if (match(Token.Kind.COMMA)) {
+                            break;
+                        }
+                        consume(Token.Kind.RIGHT_PAREN, "Expected ')' after function arguments.");
+                        calls[--frameCount] = null;
+                        open--;
+                        operand = new Ast.Expression.Function(call.receiver, call.name, call.arguments);
                     }
-                } else {
-                    throw new ParseException("Expected identifier after '.'.", tokens.has(0) ? tokens.get(0).getIndex() : -1);
                 }
-            } else {
-                break;
+            }
+        } finally {
+            // Only left over when an exception is thrown.
+            if (frameCount != frameBase || operandCount != operandBase) {
+                Arrays.fill(operands, operandBase, operandCount, null);
+                Arrays.fill(calls, frameBase, frameCount, null);
+                frameCount = frameBase;
+                operandCount = operandBase;
             }
         }
-        return expression;
     }
 
-    public Ast.Expression parsePrimaryExpression() throws ParseException {
-        if (match("NIL")) {
-            return new Ast.Expression.Literal(null);
-        } else if (match("TRUE")) {
-            return new Ast.Expression.Literal(Boolean.TRUE);
-        } else if (match("FALSE")) {
-            return new Ast.Expression.Literal(Boolean.FALSE);
+    /**
+     * Parses a primary expression, or opens a group or the arguments of a
+     * call, which are pushed as frames instead, returning null.
+     */
+    private Ast.Expression parseOperand() throws ParseException {
+        if (match(Token.Kind.NIL)) {
+            return literal(null);
+        } else if (match(Token.Kind.TRUE)) {
+            return literal(Boolean.TRUE);
+        } else if (match(Token.Kind.FALSE)) {
+            return literal(Boolean.FALSE);
         } else if (match(Token.Type.INTEGER)) {
-            String literal = tokens.get(-1).getLiteral();
+            long payload = tokens.getValue(-1);
+            if (payload != Numbers.NONE) {
+                return literal(Numbers.integer(payload));
+            }
+            String literal = tokens.getLiteral(-1);
             try {
                 BigInteger value = new BigInteger(literal);
-                return new Ast.Expression.Literal(value);
+                return literal(value);
             } catch (NumberFormatException e) {
-                throw new ParseException("Invalid integer literal.", tokens.get(-1).getIndex());
+                throw error("Invalid integer literal.", tokens.getIndex(-1));
             }
         } else if (match(Token.Type.DECIMAL)) {
-            String literal = tokens.get(-1).getLiteral();
+            long payload = tokens.getValue(-1);
+            if (payload != Numbers.NONE) {
+                return literal(Numbers.decimal(payload));
+            }
+            String literal = tokens.getLiteral(-1);
             try {
                 BigDecimal value = new BigDecimal(literal);
-                return new Ast.Expression.Literal(value);
+                return literal(value);
             } catch (NumberFormatException e) {
-                throw new ParseException("Invalid decimal literal.", tokens.get(-1).getIndex());
+                throw error("Invalid decimal literal.", tokens.getIndex(-1));
             }
         } else if (match(Token.Type.CHARACTER)) {
-            String literal = tokens.get(-1).getLiteral();
+            String literal = tokens.getLiteral(-1);
             char value = parseCharacterLiteral(literal);
-            return new Ast.Expression.Literal(value);
+            return literal(value);
         } else if (match(Token.Type.STRING)) {
-            String literal = tokens.get(-1).getLiteral();
+            String literal = tokens.getLiteral(-1);
             String value = parseStringLiteral(literal);
-            return new Ast.Expression.Literal(value);
-        } else if (match("(")) {
-            Ast.Expression expression = parseExpression();
-            consume(")", "Expected ')' after expression.");
-            return new Ast.Expression.Group(expression);
+            return literal(value);
+        } else if (match(Token.Kind.LEFT_PAREN)) {
+            pushFrame(GROUP, null);
+            return null;
         } else if (match(Token.Type.IDENTIFIER)) {
-            String name = tokens.get(-1).getLiteral();
-            if (match("(")) {
-                List<Ast.Expression> arguments = new ArrayList<>();
-                if (!peek(")")) {
-                    do {
-                        arguments.add(parseExpression());
-                    } while (match(","));
-                }
-                consume(")", "Expected ')' after function arguments.");
-                return new Ast.Expression.Function(Optional.empty(), name, arguments);
+            String name = symbols.intern(tokens.getLiteral(-1));
+            if (match(Token.Kind.LEFT_PAREN)) {
+                return parseCall(Optional.empty(), name);
             } else {
                 return new Ast.Expression.Access(Optional.empty(), name);
             }
         } else {
-            throw new ParseException("Expected primary expression.", tokens.has(0) ? tokens.get(0).getIndex() : -1);
+            throw error("Expected primary expression.", tokens.has(0) ? tokens.getIndex(0) : -1);
         }
     }
 
+    /**
+     * Parses the {@code .} accesses and calls following an expression,
+     * returning null if the arguments of a call were opened.
+     */
+    private Ast.Expression parseAccesses(Ast.Expression expression) throws ParseException {
+        while (match(Token.Kind.DOT)) {
+            if (!match(Token.Type.IDENTIFIER)) {
+                throw error("Expected identifier after '.'.", tokens.has(0) ? tokens.getIndex(0) : -1);
+            }
+            String name = symbols.intern(tokens.getLiteral(-1));
+            if (match(Token.Kind.LEFT_PAREN)) {
+                expression = parseCall(Optional.of(expression), name);
+                if (expression == null) {
+                    return null;
+                }
+            } else {
+                expression = new Ast.Expression.Access(Optional.of(expression), name);
+            }
+        }
+        return expression;
+    }
+
+    /**
+     * Returns a call without arguments, or else opens its arguments and
+     * returns null. The {@code (} has been consumed.
+     */
+    private Ast.Expression parseCall(Optional<Ast.Expression> receiver, String name) {
+        if (match(Token.Kind.RIGHT_PAREN)) {
+            return new Ast.Expression.Function(receiver, name, new ArrayList<>());
+        }
+        pushFrame(CALL, new Call(receiver, name));
+        return null;
+    }
+
+    /**
+     * Folds the pending operators above {@code frameBase} with at least the
+     * given precedence, and their left operands, into the right operand.
+     */
+    private Ast.Expression fold(Ast.Expression operand, int precedence, int frameBase) {
+        while (frameCount > frameBase && frames[frameCount - 1] >= 0
+                && PRECEDENCE[frames[frameCount - 1]] >= precedence) {
+            Token.Kind operator = Token.Kind.of(frames[--frameCount]);
+            Ast.Expression left = operands[--operandCount];
+            operand = new Ast.Expression.Binary(operator.getLiteral(), left, operand);
+        }
+        return operand;
+    }
+
+    private void pushOperand(Ast.Expression operand) {
+        if (operandCount == operands.length) {
+            operands = Arrays.copyOf(operands, operandCount * 2);
+        }
+        operands[operandCount++] = operand;
+    }
+
+    private void pushFrame(int frame, Call call) {
+        if (frameCount == frames.length) {
+            frames = Arrays.copyOf(frames, frameCount * 2);
+            calls = Arrays.copyOf(calls, frameCount * 2);
+        }
+        if (call != null) {
+            calls[frameCount] = call;
+        }
+        frames[frameCount++] = frame;
+    }
+
+    /**
+     * Returns a literal of the pooled instance of the value, carrying the
+     * object it evaluates to.
+     */
+    private Ast.Expression.Literal literal(Object value) {
+        Environment.PlcObject constant = constants.constant(value);
+        return new Ast.Expression.Literal(value == null ? null : constant.getValue(), constant);
+    }
+
     private char parseCharacterLiteral(String literal) throws ParseException {
-        String content = literal.substring(1, literal.length() - 1);
-        if (content.length() == 1) {
-            return content.charAt(0);
-        } else if (content.startsWith("\\")) {
-            if (content.length() != 2) {
-                throw new ParseException("Invalid character literal.", tokens.get(-1).getIndex());
-            }
-            char escape = content.charAt(1);
-            return switch (escape) {
-                case 'b' -> '\b';
-                case 'n' -> '\n';
-                case 'r' -> '\r';
-                case 't' -> '\t';
-                case '\'' -> '\'';
-                case '"' -> '\"';
-                case '\\' -> '\\';
-                default ->
-                        throw new ParseException("Invalid escape sequence in character literal.", tokens.get(-1).getIndex());
-            };
+        if (literal.length() == 3) {
+            return literal.charAt(1);
+        } else if (literal.length() == 4 && literal.charAt(1) == '\\') {
+            return escape(literal.charAt(2), "Invalid escape sequence in character literal.");
         } else {
-            throw new ParseException("Invalid character literal.", tokens.get(-1).getIndex());
+            throw error("Invalid character literal.", tokens.getIndex(-1));
         }
     }
 
-    private String parseStringLiteral(String literal) {
-        String content = literal.substring(1, literal.length() - 1);
-        content = content.replace("\\b", "\b")
-                .replace("\\n", "\n")
-                .replace("\\r", "\r")
-                .replace("\\t", "\t")
-                .replace("\\'", "'")
-                .replace("\\\"", "\"")
-                .replace("\\\\", "\\");
-        return content;
+    /**
+     * Decodes the escapes of a string literal in a single pass, so that an
+     * escaped backslash is never taken as the start of another escape.
+     */
+    private String parseStringLiteral(String literal) throws ParseException {
+        int end = literal.length() - 1;
+        int escape = literal.indexOf('\\', 1);
+        if (escape < 0 || escape >= end) {
+            return literal.substring(1, end);
+        }
+        StringBuilder builder = new StringBuilder(end - 1).append(literal, 1, escape);
+        for (int i = escape; i < end; i++) {
+            char c = literal.charAt(i);
+            if (c == '\\' && i + 1 < end) {
+                c = escape(literal.charAt(++i), "Invalid escape sequence in string literal.");
+            }
+            builder.append(c);
+        }
+        return builder.toString();
+    }
+
+    private char escape(char escape, String message) throws ParseException {
+        return switch (escape) {
+            case 'b' -> '\b';
+            case 'n' -> '\n';
+            case 'r' -> '\r';
+            case 't' -> '\t';
+            case '\'' -> '\'';
+            case '"' -> '\"';
+            case '\\' -> '\\';
+            default -> throw error(message, tokens.getIndex(-1));
+        };
+    }
+
+    private boolean peek(Token.Kind kind) {
+        return tokens.has(0) && tokens.getKind(0) == kind;
+    }
+
+    private boolean peek(Token.Type type) {
+        return tokens.has(0) && tokens.getType(0) == type;
+    }
+
+    private boolean match(Token.Kind kind) {
+        boolean matches = peek(kind);
+        if (matches) {
+            tokens.advance();
+        }
+        return matches;
+    }
+
+    private boolean match(Token.Type type) {
+        boolean matches = peek(type);
+        if (matches) {
+            tokens.advance();
+        }
+        return matches;
+    }
+
+    /**
+     * Consumes the current token if it has the given kind, returning its
+     * literal.
+     */
+    private String consume(Token.Kind kind, String errorMessage) throws ParseException {
+        if (peek(kind)) {
+            return advance();
+        }
+        throw error(errorMessage, tokens.has(0) ? tokens.getIndex(0) : -1);
+    }
+
+    /**
+     * Consumes the current token if it has the given type, returning its
+     * literal.
+     */
+    private String consume(Token.Type type, String errorMessage) throws ParseException {
+        if (peek(type)) {
+            return advance();
+        }
+        throw error(errorMessage, tokens.has(0) ? tokens.getIndex(0) : -1);
+    }
+
+    /**
+     * Consumes an identifier, returning its canonical name from the symbol
+     * table.
+     */
+    private String consumeName(String errorMessage) throws ParseException {
+        return symbols.intern(consume(Token.Type.IDENTIFIER, errorMessage));
+    }
+
+    /**
+     * Creates an exception at the given index, which can report its line and
+     * column when the tokens came from a {@link TokenBuffer}.
+     */
+    private ParseException error(String message, int index) {
+        return new ParseException(message, index, lines, errors == null);
+    }
+
+    private String advance() {
+        String literal = tokens.getLiteral(0);
+        tokens.advance();
+        return literal;
+    }
+
+    private abstract static class TokenStream {
+
+        public abstract boolean has(int offset);
+
+        public abstract Token.Kind getKind(int offset);
+
+        public abstract Token.Type getType(int offset);
+
+        public abstract String getLiteral(int offset);
+
+        public abstract long getValue(int offset);
+
+        public abstract int getIndex(int offset);
+
+        public abstract void advance();
+
+        /**
+         * Returns the number of tokens consumed so far.
+         */
+        public abstract int position();
+
     }
 
-    private boolean peek(Object... patterns) {
-        for (int i = 0; i < patterns.length; i++) {
-            if (!tokens.has(i)) {
-                return false;
+    /**
+     * Buffers tokens pulled from a {@link TokenSource} in a small ring, so only
+     * the current token, the grammar's lookahead and one token of look-behind
+     * (for {@code get(-1)}) are ever held in memory.
+     */
+    private static final class SourceStream extends TokenStream {
+
+        private static final int LOOKBEHIND = 1;
+        private static final int LOOKAHEAD = 2;
+        private static final int CAPACITY = 4;
+        private static final int MASK = CAPACITY - 1;
+
+        private final TokenSource source;
+        private final Token[] buffer = new Token[CAPACITY];
+        private int index = 0;
+        private int size = 0;
+        private boolean exhausted = false;
+
+        private SourceStream(TokenSource source) {
+            this.source = source;
+        }
+
+        @Override
+        public boolean has(int offset) {
+            checkOffset(offset);
+            return fill(index + offset);
+        }
+
+        @Override
+        public Token.Kind getKind(int offset) {
+            return get(offset).getKind();
+        }
+
+        @Override
+        public Token.Type getType(int offset) {
+            return get(offset).getType();
+        }
+
+        @Override
+        public String getLiteral(int offset) {
+            return get(offset).getLiteral();
+        }
+
+        @Override
+        public long getValue(int offset) {
+            return get(offset).getValue();
+        }
+
+        @Override
+        public int getIndex(int offset) {
+            return get(offset).getIndex();
+        }
+
+        @Override
+        public void advance() {
+            if (fill(index)) {
+                index++;
             }
-            Object pattern = patterns[i];
-            Token token = tokens.get(i);
-            if (pattern instanceof Token.Type) {
-                if (token.getType() != pattern) {
-                    return false;
-                }
-            } else if (pattern instanceof String) {
-                if (!token.getLiteral().equals(pattern)) {
-                    return false;
+        }
+
+        @Override
+        public int position() {
+            return index;
+        }
+
+        private Token get(int offset) {
+            checkOffset(offset);
+            if (index + offset < 0 || !fill(index + offset)) {
+                throw new IndexOutOfBoundsException("Index: " + (index + offset) + ", Size: " + size);
+            }
+            return buffer[(index + offset) & MASK];
+        }
+
+        private static void checkOffset(int offset) {
+            if (offset < -LOOKBEHIND || offset > LOOKAHEAD) {
+                throw new IllegalArgumentException("Offset " + offset + " is outside of the token buffer.");
+            }
+        }
+
+        /**
+         * Pulls tokens from the source until the given absolute position is
+         * buffered, returning false if the source runs out first.
+         */
+        private boolean fill(int position) {
+            while (size <= position && !exhausted) {
+                Token token = source.next();
+                if (token == null) {
+                    exhausted = true;
+                } else {
+                    buffer[size & MASK] = token;
+                    size++;
                 }
-            } else {
-                throw new IllegalArgumentException("Invalid pattern object: " + pattern);
             }
+            return position < size;
         }
-        return true;
+
     }
 
-    private boolean match(Object... patterns) {
-        boolean matches = peek(patterns);
-        if (matches) {
-            for (int i = 0; i < patterns.length; i++) {
-                tokens.advance();
+    /**
+     * The body of a lazily parsed method, the tokens {@code [start, end)} of
+     * the buffer up to and including its {@code END}, which prints as its
+     * range, so that a method can be printed without parsing it (see
+     * {@link Ast.Method}).
+     */
+    private static final class Body implements Supplier<List<Ast.Statement>> {
+
+        private final TokenBuffer buffer;
+        private final int start;
+        private final int end;
+
+        private Body(TokenBuffer buffer, int start, int end) {
+            this.buffer = buffer;
+            this.start = start;
+            this.end = end;
+        }
+
+        @Override
+        public List<Ast.Statement> get() throws ParseException {
+            Parser parser = new Parser(buffer, start, end);
+            List<Ast.Statement> statements = parser.parseBlock();
+            parser.consumeEnd("Expected 'END' after method body.");
+            if (parser.tokens.has(0)) {
+                throw parser.error("Expected the end of the method body.", parser.tokens.getIndex(0));
             }
+            return statements;
         }
-        return matches;
+
+        @Override
+        public String toString() {
+            return "unparsed tokens [" + start + ", " + end + ")";
+        }
+
     }
 
-    private Token consume(Object expected, String errorMessage) throws ParseException {
-        if (peek(expected)) {
-            Token token = tokens.get(0);
-            tokens.advance();
-            return token;
+    /**
+     * A call whose arguments are being parsed.
+     */
+    private static final class Call {
+
+        private final Optional<Ast.Expression> receiver;
+        private final String name;
+        private final List<Ast.Expression> arguments = new ArrayList<>();
+
+        private Call(Optional<Ast.Expression> receiver, String name) {
+            this.receiver = receiver;
+            this.name = name;
         }
-        throw new ParseException(errorMessage, tokens.has(0) ? tokens.get(0).getIndex() : -1);
+
     }
 
-    private static final class TokenStream {
+    /**
+     * The block of an {@code IF}, {@code FOR} or {@code WHILE} statement
+     * which is being parsed, or of a method body if {@code kind} is null.
+     */
+    private static final class Block {
+
+        private final Token.Kind kind;
+        private final Ast.Statement initializer;
+        private final Ast.Expression condition;
+        private final Ast.Statement.Assignment updater;
+        private final List<Ast.Statement> statements = new ArrayList<>();
+        // The else block of an IF, once its ELSE has been consumed.
+        private List<Ast.Statement> elseStatements;
+
+        private Block(Token.Kind kind, Ast.Statement initializer, Ast.Expression condition, Ast.Statement.Assignment updater) {
+            this.kind = kind;
+            this.initializer = initializer;
+            this.condition = condition;
+            this.updater = updater;
+        }
 
-        private final List<Token> tokens;
-        private int index = 0;
+        private void add(Ast.Statement statement) {
+            (elseStatements != null ? elseStatements : statements).add(statement);
+        }
 
-        private TokenStream(List<Token> tokens) {
-            this.tokens = tokens;
+        private Ast.Statement build() {
+            if (kind == Token.Kind.IF) {
+                return new Ast.Statement.If(condition, statements, elseStatements != null ? elseStatements : new ArrayList<>());
+            } else if (kind == Token.Kind.FOR) {
+                return new Ast.Statement.For(initializer, condition, updater, statements);
+            } else {
+                return new Ast.Statement.While(condition, statements);
+            }
         }
 
+    }
+
+    /**
+     * Reads tokens straight out of the arrays of a {@link TokenBuffer}, without
+     * creating {@link Token} objects.
+     */
+    private static final class BufferStream extends TokenStream {
+
+        private final TokenBuffer buffer;
+        private final SymbolTable symbols;
+        private final int end;
+        private int index;
+
+        private BufferStream(TokenBuffer buffer, int start, int end, SymbolTable symbols) {
+            this.buffer = buffer;
+            this.symbols = symbols;
+            this.index = start;
+            this.end = end;
+        }
+
+        @Override
         public boolean has(int offset) {
-            return index + offset < tokens.size();
+            return index + offset < end;
+        }
+
+        @Override
+        public Token.Kind getKind(int offset) {
+            return buffer.getKind(index + offset);
         }
 
-        public Token get(int offset) {
-            return tokens.get(index + offset);
+        @Override
+        public Token.Type getType(int offset) {
+            return buffer.getType(index + offset);
         }
 
+        @Override
+        public String getLiteral(int offset) {
+            int i = index + offset;
+            if (symbols != buffer.getSymbols() && buffer.getKind(i) == Token.Kind.IDENTIFIER) {
+                return symbols.intern(buffer.getSource(), buffer.getIndex(i), buffer.getIndex(i) + buffer.getLength(i));
+            }
+            return buffer.getLiteral(i);
+        }
+
+        @Override
+        public long getValue(int offset) {
+            return buffer.getValue(index + offset);
+        }
+
+        @Override
+        public int getIndex(int offset) {
+            return buffer.getIndex(index + offset);
+        }
+
+        @Override
         public void advance() {
-            if (index < tokens.size()) {
+            if (index < end) {
                 index++;
             }
         }
 
+        @Override
+        public int position() {
+            return index;
+        }
+
     }
 
 }
@@ -1,16 +1,27 @@
 package plc.project;
 
+import java.util.AbstractMap;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.LinkedHashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.function.Function;
 
 public final class Scope {
 
     private final Scope parent;
     public final Map<String, Environment.Variable> variables = new HashMap<>();
-    public final Map<String, Environment.Function> functions = new HashMap<>();
+    /**
+     * The functions by their "name/arity" key, as a read-only view of
+     * {@link #overloads}; define them with {@code defineFunction}.
+     */
+    public final Map<String, Environment.Function> functions = new Functions();
+    // The functions by name and then arity, so that lookups do not need to
+    // build the "name/arity" key of functions.
+    private final Map<String, Map<Integer, Environment.Function>> overloads = new HashMap<>();
 
     public Scope(Scope parent) {
         this.parent = parent;
@@ -30,18 +41,18 @@ public final class Scope {
         } else {
             Environment.Variable variable = new Environment.Variable(name, jvmName, type, constant, value);
             variables.put(variable.getName(), variable);
-            return variables.get(name);
+            return variable;
         }
     }
 
     public Environment.Variable lookupVariable(String name) {
-        if (variables.containsKey(name)) {
-            return variables.get(name);
-        } else if (parent != null) {
-            return parent.lookupVariable(name);
-        } else {
-            throw new RuntimeException("The variable " + name + " is not defined in this scope.");
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Environment.Variable variable = scope.variables.get(name);
+            if (variable != null) {
+                return variable;
+            }
         }
+        throw new RuntimeException("The variable " + name + " is not defined in this scope.");
     }
 
     public void defineFunction(String name, int arity, Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
@@ -53,23 +64,25 @@ public final class Scope {
     }
 
     public Environment.Function defineFunction(String name, String jvmName, List<Environment.Type> parameterTypes, Environment.Type returnType, java.util.function.Function<List<Environment.PlcObject>, Environment.PlcObject> function) {
-        if (functions.containsKey(name + "/" + parameterTypes.size())) {
+        Map<Integer, Environment.Function> arities = overloads.get(name);
+        if (arities != null && arities.containsKey(parameterTypes.size())) {
             throw new RuntimeException("The function " + name + "/" + parameterTypes.size() + " is already defined in this scope.");
         } else {
             Environment.Function func = new Environment.Function(name, jvmName, parameterTypes, returnType, function);
-            functions.put(func.getName() + "/" + func.getParameterTypes().size(), func);
+            overloads.computeIfAbsent(name, key -> new HashMap<>()).put(func.getParameterTypes().size(), func);
             return func;
         }
     }
 
     public Environment.Function lookupFunction(String name, int arity) {
-        if (functions.containsKey(name + "/" + arity)) {
-            return functions.get(name + "/" + arity);
-        } else if (parent != null) {
-            return parent.lookupFunction(name, arity);
-        } else {
-            throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
+        for (Scope scope = this; scope != null; scope = scope.parent) {
+            Map<Integer, Environment.Function> arities = scope.overloads.get(name);
+            Environment.Function function = arities != null ? arities.get(arity) : null;
+            if (function != null) {
+                return function;
+            }
         }
+        throw new RuntimeException("The function " + name + "/" + arity + " is not defined in this scope.");
     }
 
     @Override
@@ -81,4 +94,49 @@ public final class Scope {
                 '}';
     }
 
+    /**
+     * The view of {@link #overloads} keyed by "name/arity", which cannot be
+     * changed.
+     */
+    private final class Functions extends AbstractMap<String, Environment.Function> {
+
+        @Override
+        public Environment.Function get(Object key) {
+            if (!(key instanceof String)) {
+                return null;
+            }
+            String string = (String) key;
+            int slash = string.lastIndexOf('/');
+            if (slash < 0) {
+                return null;
+            }
+            Map<Integer, Environment.Function> arities = overloads.get(string.substring(0, slash));
+            if (arities == null) {
+                return null;
+            }
+            try {
+                return arities.get(Integer.parseInt(string.substring(slash + 1)));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return get(key) != null;
+        }
+
+        @Override
+        public Set<Entry<String, Environment.Function>> entrySet() {
+            Set<Entry<String, Environment.Function>> entries = new LinkedHashSet<>();
+            for (Map<Integer, Environment.Function> arities : overloads.values()) {
+                for (Environment.Function function : arities.values()) {
+                    entries.add(new SimpleImmutableEntry<>(function.getName() + "/" + function.getParameterTypes().size(), function));
+                }
+            }
+            return Collections.unmodifiableSet(entries);
+        }
+
+    }
+
 }
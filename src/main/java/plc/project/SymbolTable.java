@@ -0,0 +1,169 @@
+package plc.project;
+
+import java.util.Arrays;
+
+/**
+ * Interns identifier names for one compilation. Each distinct name is stored
+ * once as a canonical {@link String}, with its hash code already computed, so
+ * names in the {@link Ast} and {@link Scope} maps share a single copy and
+ * compare by identity on a hash hit. Every symbol also gets a dense id in
+ * order of first appearance.
+ *
+ * Names are hashed straight from the source, so looking up a name which has
+ * already been seen creates no substring. A table is not thread-safe, but
+ * threads can each use their own table over a shared parent; see
+ * {@link #SymbolTable(SymbolTable)}. The table also carries the
+ * {@link ConstantPool} of the compilation.
+ */
+public final class SymbolTable {
+
+    private final SymbolTable parent;
+    private final ConstantPool constants;
+    private String[] symbols = new String[16];
+    private int[] hashes = new int[16];
+    private int[] slots = new int[32];
+    private int size = 0;
+
+    public SymbolTable() {
+        this(null);
+    }
+
+    /**
+     * Creates a table which takes each name it has not seen yet from the
+     * parent, interning it there, so that its names are the canonical ones
+     * of the parent. The parent is locked for that, so any number of tables,
+     * each used by a single thread, can share it as long as nothing else
+     * uses the parent meanwhile. Ids are still those of this table.
+     */
+    public SymbolTable(SymbolTable parent) {
+        this.parent = parent;
+        this.constants = parent == null ? new ConstantPool() : parent.constants;
+    }
+
+    /**
+     * Returns the canonical instance of a name.
+     */
+    public String intern(String name) {
+        int id = find(name, 0, name.length(), name.hashCode());
+        return symbols[id];
+    }
+
+    /**
+     * Returns the canonical instance of the name at {@code [start, end)} of
+     * the source.
+     */
+    public String intern(CharSequence source, int start, int end) {
+        int id = find(source, start, end, hash(source, start, end));
+        return symbols[id];
+    }
+
+    /**
+     * Returns the id of a name, interning it if it is new.
+     */
+    public int id(String name) {
+        return find(name, 0, name.length(), name.hashCode());
+    }
+
+    public String symbol(int id) {
+        if (id < 0 || id >= size) {
+            throw new IndexOutOfBoundsException("Id: " + id + ", Size: " + size);
+        }
+        return symbols[id];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the literal constants of the compilation, which a table
+     * shares with its parent.
+     */
+    public ConstantPool getConstants() {
+        return constants;
+    }
+
+    /**
+     * Returns the id of the name at {@code [start, end)} of the source,
+     * adding it if it is new. Slots hold ids plus one, so that zero is free.
+     */
+    private int find(CharSequence source, int start, int end, int hash) {
+        int mask = slots.length - 1;
+        for (int slot = mix(hash) & mask; ; slot = (slot + 1) & mask) {
+            int id = slots[slot] - 1;
+            if (id < 0) {
+                return add(canonical(source, start, end, hash), hash, slot);
+            } else if (hashes[id] == hash && matches(symbols[id], source, start, end)) {
+                return id;
+            }
+        }
+    }
+
+    private String canonical(CharSequence source, int start, int end, int hash) {
+        if (parent == null) {
+            return source.subSequence(start, end).toString();
+        }
+        synchronized (parent) {
+            int id = parent.find(source, start, end, hash);
+            return parent.symbols[id];
+        }
+    }
+
+    private int add(String symbol, int hash, int slot) {
+        if (size == symbols.length) {
+            symbols = Arrays.copyOf(symbols, size * 2);
+            hashes = Arrays.copyOf(hashes, size * 2);
+        }
+        // Caches the hash in the string itself for the maps it is used in.
+        symbol.hashCode();
+        symbols[size] = symbol;
+        hashes[size] = hash;
+        slots[slot] = ++size;
+        if (size * 2 > slots.length) {
+            rehash();
+        }
+        return size - 1;
+    }
+
+    private void rehash() {
+        slots = new int[slots.length * 2];
+        int mask = slots.length - 1;
+        for (int id = 0; id < size; id++) {
+            int slot = mix(hashes[id]) & mask;
+            while (slots[slot] != 0) {
+                slot = (slot + 1) & mask;
+            }
+            slots[slot] = id + 1;
+        }
+    }
+
+    /**
+     * Computes {@link String#hashCode()} of the name without creating it.
+     */
+    private static int hash(CharSequence source, int start, int end) {
+        int hash = 0;
+        for (int i = start; i < end; i++) {
+            hash = 31 * hash + source.charAt(i);
+        }
+        return hash;
+    }
+
+    private static int mix(int hash) {
+        return hash ^ (hash >>> 16);
+    }
+
+    private static boolean matches(String symbol, CharSequence source, int start, int end) {
+        if (symbol == source && start == 0 && end == symbol.length()) {
+            return true;
+        } else if (symbol.length() != end - start) {
+            return false;
+        }
+        for (int i = 0; i < symbol.length(); i++) {
+            if (symbol.charAt(i) != source.charAt(start + i)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
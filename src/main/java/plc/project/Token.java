@@ -1,5 +1,8 @@
 package plc.project;
 
+import java.util.HashMap;
+import java.util.Map;
+
 public final class Token {
 
     public enum Type {
@@ -8,24 +11,169 @@ public final class Token {
         DECIMAL,
         CHARACTER,
         STRING,
-        OPERATOR
+        OPERATOR,
+        ERROR
+    }
+
+    /**
+     * A finer classification than {@link Type}. Keywords and operators each
+     * get their own kind, so the parser can dispatch on kinds instead of
+     * comparing literals. Every other token has the generic kind of its type,
+     * and generic kinds share ordinals with {@link Type}.
+     */
+    public enum Kind {
+        IDENTIFIER(Type.IDENTIFIER, null),
+        INTEGER(Type.INTEGER, null),
+        DECIMAL(Type.DECIMAL, null),
+        CHARACTER(Type.CHARACTER, null),
+        STRING(Type.STRING, null),
+        OPERATOR(Type.OPERATOR, null),
+        ERROR(Type.ERROR, null),
+
+        LET(Type.IDENTIFIER, "LET"),
+        CONST(Type.IDENTIFIER, "CONST"),
+        DEF(Type.IDENTIFIER, "DEF"),
+        DO(Type.IDENTIFIER, "DO"),
+        END(Type.IDENTIFIER, "END"),
+        IF(Type.IDENTIFIER, "IF"),
+        ELSE(Type.IDENTIFIER, "ELSE"),
+        FOR(Type.IDENTIFIER, "FOR"),
+        WHILE(Type.IDENTIFIER, "WHILE"),
+        RETURN(Type.IDENTIFIER, "RETURN"),
+        NIL(Type.IDENTIFIER, "NIL"),
+        TRUE(Type.IDENTIFIER, "TRUE"),
+        FALSE(Type.IDENTIFIER, "FALSE"),
+
+        AND(Type.OPERATOR, "&&"),
+        OR(Type.OPERATOR, "||"),
+        EQUAL(Type.OPERATOR, "=="),
+        NOT_EQUAL(Type.OPERATOR, "!="),
+        LESS_EQUAL(Type.OPERATOR, "<="),
+        GREATER_EQUAL(Type.OPERATOR, ">="),
+        PLUS(Type.OPERATOR, "+"),
+        MINUS(Type.OPERATOR, "-"),
+        STAR(Type.OPERATOR, "*"),
+        SLASH(Type.OPERATOR, "/"),
+        PERCENT(Type.OPERATOR, "%"),
+        LESS(Type.OPERATOR, "<"),
+        GREATER(Type.OPERATOR, ">"),
+        ASSIGN(Type.OPERATOR, "="),
+        BANG(Type.OPERATOR, "!"),
+        CARET(Type.OPERATOR, "^"),
+        TILDE(Type.OPERATOR, "~"),
+        AT(Type.OPERATOR, "@"),
+        LEFT_PAREN(Type.OPERATOR, "("),
+        RIGHT_PAREN(Type.OPERATOR, ")"),
+        LEFT_BRACE(Type.OPERATOR, "{"),
+        RIGHT_BRACE(Type.OPERATOR, "}"),
+        LEFT_BRACKET(Type.OPERATOR, "["),
+        RIGHT_BRACKET(Type.OPERATOR, "]"),
+        COMMA(Type.OPERATOR, ","),
+        SEMICOLON(Type.OPERATOR, ";"),
+        DOT(Type.OPERATOR, "."),
+        COLON(Type.OPERATOR, ":");
+
+        private static final Kind[] VALUES = values();
+        private static final Map<String, Kind> KEYWORDS = new HashMap<>();
+        private static final Map<String, Kind> OPERATORS = new HashMap<>();
+
+        static {
+            for (Kind kind : VALUES) {
+                if (kind.literal != null) {
+                    (kind.type == Type.IDENTIFIER ? KEYWORDS : OPERATORS).put(kind.literal, kind);
+                }
+            }
+        }
+
+        private final Type type;
+        private final String literal;
+
+        Kind(Type type, String literal) {
+            this.type = type;
+            this.literal = literal;
+        }
+
+        public Type getType() {
+            return type;
+        }
+
+        /**
+         * Returns the fixed literal of a keyword or operator, or {@code null}
+         * for generic kinds.
+         */
+        public String getLiteral() {
+            return literal;
+        }
+
+        public static Kind of(int ordinal) {
+            return VALUES[ordinal];
+        }
+
+        public static Kind of(Type type, String literal) {
+            Kind kind = null;
+            if (type == Type.IDENTIFIER) {
+                kind = KEYWORDS.get(literal);
+            } else if (type == Type.OPERATOR) {
+                kind = OPERATORS.get(literal);
+            }
+            return kind != null ? kind : VALUES[type.ordinal()];
+        }
+
     }
 
-    private final Type type;
-    private final String literal;
+    private final Kind kind;
+    private final CharSequence source;
     private final int index;
+    private final int length;
+    private final long value;
+    private String literal;
 
     public Token(Type type, String literal, int index) {
-        this.type = type;
+        this.kind = Kind.of(type, literal);
+        this.source = null;
+        this.index = index;
+        this.length = literal.length();
+        this.value = Numbers.parse(kind, literal, 0, literal.length());
         this.literal = literal;
+    }
+
+    /**
+     * Creates a token with an already known (e.g. interned) literal.
+     */
+    Token(Kind kind, String literal, int index) {
+        this.kind = kind;
+        this.source = null;
         this.index = index;
+        this.length = literal.length();
+        this.value = Numbers.NONE;
+        this.literal = literal;
+    }
+
+    /**
+     * Creates a token spanning {@code [start, end)} of the source. The literal
+     * is only copied out of the source the first time it is requested, but
+     * the value of a number is read right away; see {@link #getValue()}.
+     */
+    public Token(Kind kind, CharSequence source, int start, int end) {
+        this.kind = kind;
+        this.source = source;
+        this.index = start;
+        this.length = end - start;
+        this.value = Numbers.parse(kind, source, start, end);
     }
 
     public Type getType() {
-        return type;
+        return kind.getType();
+    }
+
+    public Kind getKind() {
+        return kind;
     }
 
     public String getLiteral() {
+        if (literal == null) {
+            literal = kind.getLiteral() != null ? kind.getLiteral() : source.subSequence(index, index + length).toString();
+        }
         return literal;
     }
 
@@ -33,17 +181,29 @@ public final class Token {
         return index;
     }
 
+    /**
+     * Returns the value of an integer or decimal token encoded as described
+     * in {@link Numbers}, or {@link Numbers#NONE}.
+     */
+    long getValue() {
+        return value;
+    }
+
+    public int getEnd() {
+        return index + length;
+    }
+
     @Override
     public boolean equals(Object obj) {
         return obj instanceof Token
-                && type == ((Token) obj).type
-                && literal.equals(((Token) obj).literal)
+                && getType() == ((Token) obj).getType()
+                && getLiteral().equals(((Token) obj).getLiteral())
                 && index == ((Token) obj).index;
     }
 
     @Override
     public String toString() {
-        return type + "=" + literal + "@" + index;
+        return getType() + "=" + getLiteral() + "@" + index;
     }
 
 }
@@ -0,0 +1,199 @@
+package plc.project;
+
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * A compact, struct-of-arrays token list produced by {@link Lexer#lexCompact()}.
+ * Token kinds, start offsets and lengths are stored in parallel primitive
+ * arrays over a shared source, so a token costs 9 bytes instead of a
+ * {@link Token} object plus its literal. {@link Token} views are only created
+ * when {@link #get(int)} is called. Identifier literals are interned in the
+ * buffer's {@link SymbolTable} when they are requested.
+ */
+public final class TokenBuffer {
+
+    private CharSequence source;
+    private SymbolTable symbols;
+    private LineIndex lines;
+    private byte[] kinds;
+    private int[] starts;
+    private int[] lengths;
+    private int size = 0;
+
+    public TokenBuffer(CharSequence source) {
+        this(source, 16);
+    }
+
+    public TokenBuffer(CharSequence source, int capacity) {
+        this(source, new SymbolTable(), capacity);
+    }
+
+    public TokenBuffer(CharSequence source, SymbolTable symbols, int capacity) {
+        this(source, symbols, null, capacity);
+    }
+
+    /**
+     * Creates a buffer whose line index was recorded while lexing; without
+     * one, the index is built from the source when it is first requested.
+     */
+    TokenBuffer(CharSequence source, SymbolTable symbols, LineIndex lines, int capacity) {
+        this.source = source;
+        this.symbols = symbols;
+        this.lines = lines;
+        this.kinds = new byte[capacity];
+        this.starts = new int[capacity];
+        this.lengths = new int[capacity];
+    }
+
+    public CharSequence getSource() {
+        return source;
+    }
+
+    public SymbolTable getSymbols() {
+        return symbols;
+    }
+
+    public LineIndex getLines() {
+        if (lines == null) {
+            lines = LineIndex.of(source);
+        }
+        return lines;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public void add(Token.Kind kind, int start, int end) {
+        if (size == kinds.length) {
+            int capacity = Math.max(16, size + (size >> 1));
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        kinds[size] = (byte) kind.ordinal();
+        starts[size] = start;
+        lengths[size] = end - start;
+        size++;
+    }
+
+    /**
+     * Clears the buffer for tokens over a new source, keeping its capacity.
+     */
+    void reset(CharSequence source, SymbolTable symbols, LineIndex lines) {
+        this.source = source;
+        this.symbols = symbols;
+        this.lines = lines;
+        this.size = 0;
+    }
+
+    /**
+     * Appends every token of another buffer over the same source.
+     */
+    public void addAll(TokenBuffer other) {
+        if (other.source != source) {
+            throw new IllegalArgumentException("Buffers are over different sources.");
+        }
+        append(other, 0, other.size, 0);
+        if (lines != null && other.lines != null) {
+            lines.append(other.lines, 0, source.length() + 1, 0);
+        } else {
+            lines = null;
+        }
+    }
+
+    /**
+     * Appends tokens {@code [from, to)} of another buffer, shifting their
+     * offsets by {@code shift}. The caller is responsible for the shifted
+     * offsets being valid in this buffer's source.
+     */
+    void append(TokenBuffer other, int from, int to, int shift) {
+        int count = to - from;
+        if (size + count > kinds.length) {
+            int capacity = Math.max(size + count, size + (size >> 1));
+            kinds = Arrays.copyOf(kinds, capacity);
+            starts = Arrays.copyOf(starts, capacity);
+            lengths = Arrays.copyOf(lengths, capacity);
+        }
+        System.arraycopy(other.kinds, from, kinds, size, count);
+        System.arraycopy(other.starts, from, starts, size, count);
+        System.arraycopy(other.lengths, from, lengths, size, count);
+        if (shift != 0) {
+            for (int i = size; i < size + count; i++) {
+                starts[i] += shift;
+            }
+        }
+        size += count;
+    }
+
+    public Token.Kind getKind(int i) {
+        return Token.Kind.of(kinds[i]);
+    }
+
+    public Token.Type getType(int i) {
+        return Token.Kind.of(kinds[i]).getType();
+    }
+
+    public int getIndex(int i) {
+        return starts[i];
+    }
+
+    public int getLength(int i) {
+        return lengths[i];
+    }
+
+    public String getLiteral(int i) {
+        Token.Kind kind = Token.Kind.of(kinds[i]);
+        if (kind.getLiteral() != null) {
+            return kind.getLiteral();
+        } else if (kind == Token.Kind.IDENTIFIER) {
+            return symbols.intern(source, starts[i], starts[i] + lengths[i]);
+        }
+        return source.subSequence(starts[i], starts[i] + lengths[i]).toString();
+    }
+
+    /**
+     * Returns the value of an integer or decimal token encoded as described
+     * in {@link Numbers}, or {@link Numbers#NONE}. Buffers store no payload,
+     * so it is read from the source, without creating the literal.
+     */
+    long getValue(int i) {
+        return Numbers.parse(Token.Kind.of(kinds[i]), source, starts[i], starts[i] + lengths[i]);
+    }
+
+    public Token get(int i) {
+        if (i < 0 || i >= size) {
+            throw new IndexOutOfBoundsException("Index: " + i + ", Size: " + size);
+        }
+        Token.Kind kind = Token.Kind.of(kinds[i]);
+        if (kind == Token.Kind.IDENTIFIER) {
+            return new Token(kind, getLiteral(i), starts[i]);
+        }
+        return new Token(kind, source, starts[i], starts[i] + lengths[i]);
+    }
+
+    /**
+     * Returns a read-only list view which creates a {@link Token} per access.
+     */
+    public List<Token> asList() {
+        return new View();
+    }
+
+    private final class View extends AbstractList<Token> implements RandomAccess {
+
+        @Override
+        public Token get(int index) {
+            return TokenBuffer.this.get(index);
+        }
+
+        @Override
+        public int size() {
+            return size;
+        }
+
+    }
+
+}
@@ -0,0 +1,25 @@
+package plc.project;
+
+import java.util.Iterator;
+import java.util.List;
+
+/**
+ * A pull-based supply of tokens. The {@link Parser} reads tokens from a source
+ * one at a time, so a source backed by the {@link Lexer} (see
+ * {@link Lexer#tokens()}) lexes lazily as the parser advances instead of
+ * materializing the whole token list up front.
+ */
+@FunctionalInterface
+public interface TokenSource {
+
+    /**
+     * Returns the next token, or {@code null} once the input is exhausted.
+     */
+    Token next();
+
+    static TokenSource of(List<Token> tokens) {
+        Iterator<Token> iterator = tokens.iterator();
+        return () -> iterator.hasNext() ? iterator.next() : null;
+    }
+
+}
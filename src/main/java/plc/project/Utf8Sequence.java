@@ -0,0 +1,261 @@
+package plc.project;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+
+/**
+ * A {@link CharSequence} view over UTF-8 encoded bytes which is indexed in
+ * chars, exactly like the {@link String} the bytes decode to, but without
+ * decoding them up front. Lexing it gives the same tokens and indices as
+ * lexing the decoded string; see {@link ByteSequence} for byte offsets.
+ *
+ * The bytes are scanned once for multi-byte sequences, eight bytes at a
+ * time while they are ASCII, and the char and byte offset of each sequence
+ * is recorded along with its size. ASCII chars are read straight from the
+ * buffer and only the multi-byte sequences, which are legal only inside
+ * string and character literals, are decoded on access. The bytes are
+ * assumed to be well-formed; each byte of a malformed sequence reads as
+ * U+FFFD, in {@link #subSequence(int, int)} and {@link #toString()} too.
+ */
+public final class Utf8Sequence implements CharSequence {
+
+    private static final char REPLACEMENT = '\uFFFD';
+
+    private final ByteBuffer buffer;
+    private final int offset;
+    private final int limit;
+    private final int length;
+    private final int[] chars;
+    private final int[] bytes;
+    private final byte[] sizes;
+    private final int count;
+    private final boolean malformed;
+    private Stretch stretch;
+
+    public Utf8Sequence(ByteBuffer buffer) {
+        this.buffer = buffer;
+        this.offset = buffer.position();
+        int[] chars = new int[16];
+        int[] bytes = new int[16];
+        byte[] sizes = new byte[16];
+        int count = 0;
+        boolean malformed = false;
+        int length = 0;
+        int position = 0;
+        this.limit = buffer.remaining();
+        while (position < limit) {
+            if (position + 8 <= limit && (buffer.getLong(offset + position) & 0x8080808080808080L) == 0) {
+                position += 8;
+                length += 8;
+                continue;
+            }
+            int lead = buffer.get(offset + position) & 0xFF;
+            if (lead < 0x80) {
+                position++;
+                length++;
+                continue;
+            }
+            if (count == chars.length) {
+                chars = Arrays.copyOf(chars, count * 2);
+                bytes = Arrays.copyOf(bytes, count * 2);
+                sizes = Arrays.copyOf(sizes, count * 2);
+            }
+            int size = size(position);
+            chars[count] = length;
+            bytes[count] = position;
+            sizes[count] = (byte) size;
+            count++;
+            malformed |= size == 1;
+            position += size;
+            length += size == 4 ? 2 : 1;
+        }
+        this.length = length;
+        this.chars = chars;
+        this.bytes = bytes;
+        this.sizes = sizes;
+        this.count = count;
+        this.malformed = malformed;
+        this.stretch = new Stretch(-1, 0, count == 0 ? length : chars[0], 0);
+    }
+
+    /**
+     * Returns true if the bytes are all ASCII, in which case char and byte
+     * offsets coincide.
+     */
+    public boolean isAscii() {
+        return count == 0;
+    }
+
+    @Override
+    public int length() {
+        return length;
+    }
+
+    @Override
+    public char charAt(int index) {
+        if (index < 0 || index >= length) {
+            throw new IndexOutOfBoundsException("Index: " + index + ", Length: " + length);
+        }
+        Stretch stretch = this.stretch;
+        if (index >= stretch.start && index < stretch.end) {
+            return (char) buffer.get(offset + index + stretch.shift);
+        }
+        int sequence = find(index, stretch.sequence + 1);
+        if (sequence < 0) {
+            return (char) buffer.get(offset + index);
+        }
+        int position = bytes[sequence];
+        int size = sizes[sequence];
+        int within = index - chars[sequence];
+        int width = size == 4 ? 2 : 1;
+        if (within >= width) {
+            this.stretch = new Stretch(sequence, chars[sequence] + width, sequence + 1 < count ? chars[sequence + 1] : length, position + size - chars[sequence] - width);
+            return (char) buffer.get(offset + position + size + within - width);
+        }
+        int lead = buffer.get(offset + position) & 0xFF;
+        switch (size) {
+            case 2:
+                return (char) ((lead & 0x1F) << 6 | continuation(position + 1));
+            case 3:
+                return (char) ((lead & 0x0F) << 12 | continuation(position + 1) << 6 | continuation(position + 2));
+            case 4:
+                int code = (lead & 0x07) << 18 | continuation(position + 1) << 12 | continuation(position + 2) << 6 | continuation(position + 3);
+                return within == 0 ? Character.highSurrogate(code) : Character.lowSurrogate(code);
+            default:
+                return REPLACEMENT;
+        }
+    }
+
+    @Override
+    public CharSequence subSequence(int start, int end) {
+        if (start < 0 || end > length || start > end) {
+            throw new IndexOutOfBoundsException("Range: [" + start + ", " + end + "), Length: " + length);
+        }
+        int from = position(start);
+        int to = position(end);
+        if (from < 0 || to < 0 || malformed) {
+            return chars(start, end);
+        }
+        return decode(from, to);
+    }
+
+    @Override
+    public String toString() {
+        return malformed ? chars(0, length) : decode(0, limit);
+    }
+
+    /**
+     * Returns the chars {@code [start, end)} one at a time, which the JDK
+     * decoder would not give for malformed bytes, since it replaces each
+     * maximal invalid sequence with one U+FFFD instead of each byte.
+     */
+    private String chars(int start, int end) {
+        StringBuilder builder = new StringBuilder(end - start);
+        for (int i = start; i < end; i++) {
+            builder.append(charAt(i));
+        }
+        return builder.toString();
+    }
+
+    /**
+     * Decodes the well-formed bytes {@code [from, to)}.
+     */
+    private String decode(int from, int to) {
+        byte[] decoded = new byte[to - from];
+        buffer.get(offset + from, decoded);
+        return new String(decoded, count == 0 ? StandardCharsets.ISO_8859_1 : StandardCharsets.UTF_8);
+    }
+
+    /**
+     * Returns the byte offset of a char offset, or -1 if it splits a
+     * surrogate pair.
+     */
+    private int position(int index) {
+        int sequence = find(index, 0);
+        if (sequence < 0) {
+            return index;
+        }
+        int size = sizes[sequence];
+        int within = index - chars[sequence];
+        if (within == 0) {
+            return bytes[sequence];
+        } else if (size == 4 && within == 1) {
+            return -1;
+        }
+        return bytes[sequence] + size + within - (size == 4 ? 2 : 1);
+    }
+
+    /**
+     * Returns the last multi-byte sequence starting at or before a char
+     * offset, or -1 if there is none. The {@code hint} is checked first.
+     */
+    private int find(int index, int hint) {
+        if (hint < count && chars[hint] <= index && (hint + 1 == count || chars[hint + 1] > index)) {
+            return hint;
+        }
+        int low = 0;
+        int high = count;
+        while (low < high) {
+            int middle = (low + high) >>> 1;
+            if (chars[middle] <= index) {
+                low = middle + 1;
+            } else {
+                high = middle;
+            }
+        }
+        return low - 1;
+    }
+
+    /**
+     * Returns the number of bytes of the sequence at a byte offset, which is
+     * 1 for a malformed one.
+     */
+    private int size(int position) {
+        int lead = buffer.get(offset + position) & 0xFF;
+        int size = lead < 0x80 ? 1 : lead < 0xC2 ? 0 : lead < 0xE0 ? 2 : lead < 0xF0 ? 3 : lead < 0xF5 ? 4 : 0;
+        if (size <= 1 || position + size > limit) {
+            return 1;
+        }
+        for (int i = 1; i < size; i++) {
+            if ((buffer.get(offset + position + i) & 0xC0) != 0x80) {
+                return 1;
+            }
+        }
+        // Overlong encodings, surrogates and code points past U+10FFFF.
+        int second = buffer.get(offset + position + 1) & 0xFF;
+        if (lead == 0xE0 && second < 0xA0 || lead == 0xED && second > 0x9F
+                || lead == 0xF0 && second < 0x90 || lead == 0xF4 && second > 0x8F) {
+            return 1;
+        }
+        return size;
+    }
+
+    private int continuation(int position) {
+        return buffer.get(offset + position) & 0x3F;
+    }
+
+    /**
+     * The run of ASCII chars {@code [start, end)} read most recently, which
+     * follows {@code sequence} and whose bytes are at {@code shift} past
+     * their char offsets. Sources are mostly read sequentially, so this is
+     * checked before searching the sequences. It is immutable, so concurrent
+     * readers replacing it is harmless.
+     */
+    private static final class Stretch {
+
+        private final int sequence;
+        private final int start;
+        private final int end;
+        private final int shift;
+
+        private Stretch(int sequence, int start, int end, int shift) {
+            this.sequence = sequence;
+            this.start = start;
+            this.end = end;
+            this.shift = shift;
+        }
+
+    }
+
+}
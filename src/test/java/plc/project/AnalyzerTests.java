@@ -1,6 +1,7 @@
 package plc.project;
 
 import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
 import org.junit.jupiter.params.ParameterizedTest;
 import org.junit.jupiter.params.provider.Arguments;
 import org.junit.jupiter.params.provider.MethodSource;
@@ -8,6 +9,7 @@ import org.junit.jupiter.params.provider.MethodSource;
 import java.math.BigDecimal;
 import java.math.BigInteger;
 import java.util.Arrays;
+import java.util.Map;
 import java.util.Optional;
 import java.util.function.Consumer;
 import java.util.stream.Stream;
@@ -413,6 +415,18 @@ public final class AnalyzerTests {
         );
     }
 
+    @Test
+    public void testScopeFunctions() {
+        Scope scope = new Scope(null);
+        Environment.Function print = scope.defineFunction("print", "System.out.println", Arrays.asList(Environment.Type.ANY), Environment.Type.NIL, args -> Environment.NIL);
+        Assertions.assertThrows(RuntimeException.class, () -> scope.defineFunction("print", 1, args -> Environment.NIL));
+        Assertions.assertThrows(RuntimeException.class, () -> scope.lookupFunction("print", 0));
+        Assertions.assertEquals(Map.of("print/1", print), scope.functions);
+        Assertions.assertSame(print, scope.functions.get("print/1"));
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> scope.functions.put("print/0", print));
+        Assertions.assertSame(print, new Scope(scope).lookupFunction("print", 1));
+    }
+
     /**
      * Helper function for tests. If {@param expected} is {@code null}, analysis
      * is expected to throw a {@link RuntimeException}.
@@ -0,0 +1,318 @@
+package plc.project;
+
+import org.junit.jupiter.api.Assertions;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.params.ParameterizedTest;
+import org.junit.jupiter.params.provider.Arguments;
+import org.junit.jupiter.params.provider.MethodSource;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+
+/**
+ * Standard JUnit5 parameterized tests. The lexer is table driven, so these
+ * mostly pin down the token boundaries and error indices it must reproduce.
+ */
+final class LexerTests {
+
+    @ParameterizedTest
+    @MethodSource
+    void testToken(String test, String input, Token.Type expected) {
+        test(input, Arrays.asList(new Token(expected, input, 0)));
+    }
+
+    private static Stream<Arguments> testToken() {
+        return Stream.of(
+                Arguments.of("Identifier", "getName", Token.Type.IDENTIFIER),
+                Arguments.of("Identifier Hyphen", "is-empty", Token.Type.IDENTIFIER),
+                Arguments.of("Identifier Underscore", "_private1", Token.Type.IDENTIFIER),
+                Arguments.of("Integer", "123", Token.Type.INTEGER),
+                Arguments.of("Zero", "0", Token.Type.INTEGER),
+                Arguments.of("Negative Integer", "-12", Token.Type.INTEGER),
+                Arguments.of("Decimal", "123.456", Token.Type.DECIMAL),
+                Arguments.of("Signed Decimal", "+0.5", Token.Type.DECIMAL),
+                Arguments.of("Character", "'c'", Token.Type.CHARACTER),
+                Arguments.of("Character Escape", "'\\n'", Token.Type.CHARACTER),
+                Arguments.of("String", "\"Hello, World!\"", Token.Type.STRING),
+                Arguments.of("String Escapes", "\"1\\t2\\\"3\\\\\"", Token.Type.STRING),
+                Arguments.of("Empty String", "\"\"", Token.Type.STRING),
+                Arguments.of("Operator", "<=", Token.Type.OPERATOR),
+                Arguments.of("Sign Operator", "-", Token.Type.OPERATOR)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testKind(String test, String input, Token.Kind expected) {
+        List<Token> tokens = new Lexer(input).lex();
+        Assertions.assertEquals(1, tokens.size());
+        Assertions.assertEquals(expected, tokens.get(0).getKind());
+        Assertions.assertEquals(expected, new Lexer(input).lexCompact().getKind(0));
+    }
+
+    private static Stream<Arguments> testKind() {
+        return Stream.of(
+                Arguments.of("Keyword", "LET", Token.Kind.LET),
+                Arguments.of("Keyword Prefix", "LETTER", Token.Kind.IDENTIFIER),
+                Arguments.of("Keyword Lowercase", "end", Token.Kind.IDENTIFIER),
+                Arguments.of("Keyword In String", "\"RETURN\"", Token.Kind.STRING),
+                Arguments.of("Single Operator", "<", Token.Kind.LESS),
+                Arguments.of("Double Operator", "<=", Token.Kind.LESS_EQUAL),
+                Arguments.of("Integer", "10", Token.Kind.INTEGER)
+        );
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testException(String test, String input, int index) {
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lex());
+        Assertions.assertEquals(index, exception.getIndex());
+    }
+
+    private static Stream<Arguments> testException() {
+        return Stream.of(
+                Arguments.of("Leading Zero", "01", 1),
+                Arguments.of("Trailing Decimal", "1.", 2),
+                Arguments.of("Empty Character", "''", 1),
+                Arguments.of("Unterminated Character", "'ab'", 2),
+                Arguments.of("Invalid Character Escape", "'\\q'", 2),
+                Arguments.of("Unterminated String", "\"unterminated", 13),
+                Arguments.of("String Newline", "\"a\nb\"", 2),
+                Arguments.of("Invalid String Escape", "\"\\q\"", 2),
+                Arguments.of("Invalid Operator", "a # b", 2)
+        );
+    }
+
+    @Test
+    void testExample() {
+        String input = "LET x = -1 + y.z(2.5, 'c');";
+        test(input, Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "LET", 0),
+                new Token(Token.Type.IDENTIFIER, "x", 4),
+                new Token(Token.Type.OPERATOR, "=", 6),
+                new Token(Token.Type.INTEGER, "-1", 8),
+                new Token(Token.Type.OPERATOR, "+", 11),
+                new Token(Token.Type.IDENTIFIER, "y", 13),
+                new Token(Token.Type.OPERATOR, ".", 14),
+                new Token(Token.Type.IDENTIFIER, "z", 15),
+                new Token(Token.Type.OPERATOR, "(", 16),
+                new Token(Token.Type.DECIMAL, "2.5", 17),
+                new Token(Token.Type.OPERATOR, ",", 20),
+                new Token(Token.Type.CHARACTER, "'c'", 22),
+                new Token(Token.Type.OPERATOR, ")", 25),
+                new Token(Token.Type.OPERATOR, ";", 26)
+        ));
+    }
+
+    @Test
+    void testByteSequence() {
+        byte[] bytes = "print(\"caf\u00e9\");".getBytes(StandardCharsets.UTF_8);
+        test(new ByteSequence(ByteBuffer.wrap(bytes)), Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "print", 0),
+                new Token(Token.Type.OPERATOR, "(", 5),
+                new Token(Token.Type.STRING, "\"caf\u00e9\"", 6),
+                new Token(Token.Type.OPERATOR, ")", 13),
+                new Token(Token.Type.OPERATOR, ";", 14)
+        ));
+    }
+
+    @Test
+    void testUtf8() {
+        String input = "LET c = '\u00e9'; print(\"\u20ac\ud83d\ude00\", c);";
+        byte[] bytes = input.getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals(new Lexer(input).lex(), new Lexer(bytes, true).lex());
+        Assertions.assertEquals(new Lexer(input).lex(), new Lexer(bytes, true).lexCompact().asList());
+        Assertions.assertEquals(Arrays.asList(
+                new Token(Token.Type.IDENTIFIER, "LET", 0),
+                new Token(Token.Type.IDENTIFIER, "c", 4),
+                new Token(Token.Type.OPERATOR, "=", 6),
+                new Token(Token.Type.CHARACTER, "'\u00e9'", 8),
+                new Token(Token.Type.OPERATOR, ";", 12),
+                new Token(Token.Type.IDENTIFIER, "print", 14),
+                new Token(Token.Type.OPERATOR, "(", 19),
+                new Token(Token.Type.STRING, "\"\u20ac\ud83d\ude00\"", 20),
+                new Token(Token.Type.OPERATOR, ",", 29),
+                new Token(Token.Type.IDENTIFIER, "c", 31),
+                new Token(Token.Type.OPERATOR, ")", 32),
+                new Token(Token.Type.OPERATOR, ";", 33)
+        ), new Lexer(bytes, false).lex());
+        byte[] supplementary = "'\ud83d\ude00'".getBytes(StandardCharsets.UTF_8);
+        Assertions.assertEquals(2, Assertions.assertThrows(ParseException.class, () -> new Lexer(supplementary, true).lex()).getIndex());
+        Assertions.assertEquals(3, Assertions.assertThrows(ParseException.class, () -> new Lexer(supplementary, false).lex()).getIndex());
+
+        // Each byte of a malformed sequence is one U+FFFD, however it is read.
+        byte[] malformed = {'"', (byte) 0xE2, (byte) 0x82, 'a', (byte) 0xFF, (byte) 0xC3, (byte) 0xA9, '"'};
+        Utf8Sequence sequence = new Utf8Sequence(ByteBuffer.wrap(malformed));
+        String expected = "\"\uFFFD\uFFFDa\uFFFD\u00e9\"";
+        Assertions.assertEquals(expected.length(), sequence.length());
+        for (int i = 0; i < expected.length(); i++) {
+            Assertions.assertEquals(expected.charAt(i), sequence.charAt(i));
+        }
+        Assertions.assertEquals(expected, sequence.toString());
+        Assertions.assertEquals(expected.substring(1, 5), sequence.subSequence(1, 5).toString());
+        Assertions.assertEquals(new Lexer(expected).lex(), new Lexer(malformed, true).lex());
+    }
+
+    @Test
+    void testSymbols() {
+        SymbolTable symbols = new SymbolTable();
+        List<Token> tokens = new Lexer("name + other - name", symbols).lex();
+        Assertions.assertSame(tokens.get(0).getLiteral(), tokens.get(4).getLiteral());
+        TokenBuffer buffer = new Lexer("other name", symbols).lexCompact();
+        Assertions.assertSame(tokens.get(2).getLiteral(), buffer.getLiteral(0));
+        Assertions.assertSame(tokens.get(0).getLiteral(), buffer.get(1).getLiteral());
+        Assertions.assertEquals(2, symbols.size());
+    }
+
+    @Test
+    void testLines() {
+        String input = "LET x = 1;\nLET y = 2;\r\n\r\n  print(x);\rLET z = 01;";
+        TokenBuffer buffer = new Lexer(input.substring(0, input.lastIndexOf('\r'))).lexCompact();
+        Assertions.assertEquals(4, buffer.getLines().getLineCount());
+        Assertions.assertEquals(1, buffer.getLines().getLine(10));
+        Assertions.assertEquals(2, buffer.getLines().getLine(11));
+        Assertions.assertEquals(4, buffer.getLines().getLine(27));
+        Assertions.assertEquals(3, buffer.getLines().getColumn(27));
+        Assertions.assertEquals(25, buffer.getLines().getLineStart(4));
+        ParseException exception = Assertions.assertThrows(ParseException.class, () -> new Lexer(input).lex());
+        Assertions.assertEquals(5, exception.getLine());
+        Assertions.assertEquals(10, exception.getColumn());
+        TokenBuffer edited = Lexer.relex(buffer, 11, 0, "\n\n");
+        Assertions.assertEquals(6, edited.getLines().getLineCount());
+        Assertions.assertEquals(6, edited.getLines().getLine(29));
+    }
+
+    @Test
+    void testExact() {
+        Lexer lexer = new Lexer("<= x");
+        Assertions.assertFalse(lexer.peekExact("<=="));
+        Assertions.assertTrue(lexer.matchExact("<="));
+        Assertions.assertTrue(lexer.peekExact(" x"));
+        Assertions.assertFalse(lexer.matchExact("x"));
+
+        Lexer.CharStream stream = new Lexer.CharStream("LET <=");
+        stream.advance();
+        stream.advance();
+        stream.advance();
+        Token let = stream.emit(Token.Type.IDENTIFIER);
+        Assertions.assertEquals(new Token(Token.Type.IDENTIFIER, "LET", 0), let);
+        Assertions.assertEquals(Token.Kind.LET, let.getKind());
+        stream.advance();
+        stream.skip();
+        stream.advance();
+        stream.advance();
+        Assertions.assertEquals(Token.Kind.LESS_EQUAL, stream.emit(Token.Type.OPERATOR).getKind());
+    }
+
+    @Test
+    void testReset() {
+        Lexer lexer = new Lexer("LET x = 1;\nx");
+        TokenBuffer buffer = lexer.lexCompact();
+        Assertions.assertEquals(6, buffer.size());
+        String input = "print(x,\n  \"y\");";
+        Assertions.assertSame(buffer, lexer.reset(input).lexCompact());
+        Assertions.assertEquals(new Lexer(input).lex(), buffer.asList());
+        Assertions.assertEquals(2, buffer.getLines().getLineCount());
+        Assertions.assertEquals(new Lexer(input).lex(), lexer.reset(input).lex());
+        Assertions.assertThrows(ParseException.class, () -> lexer.reset("a # b").lexCompact());
+        Assertions.assertEquals(new Lexer(input).lex(), lexer.reset(input).lexCompact().asList());
+        Assertions.assertEquals(new Lexer(input).lex(), Lexer.local(input).lex());
+        Assertions.assertSame(Lexer.local("x").lexCompact(), Lexer.local(input).lexCompact());
+
+        // Without a reset, the first buffer is left alone.
+        Lexer again = new Lexer("x y");
+        TokenBuffer first = again.lexCompact();
+        Assertions.assertNotSame(first, again.lexCompact());
+        Assertions.assertEquals(2, first.size());
+    }
+
+    @Test
+    void testLongRuns() {
+        StringBuilder builder = new StringBuilder();
+        List<Token> expected = new ArrayList<>();
+        for (int length = 1; length <= 130; length += 7) {
+            builder.append(" \t\n".repeat(length));
+            expected.add(new Token(Token.Type.IDENTIFIER, "a-_".repeat(length) + "Z", builder.length()));
+            builder.append(expected.get(expected.size() - 1).getLiteral()).append("\r".repeat(length));
+            expected.add(new Token(Token.Type.DECIMAL, "9".repeat(length) + ".0" + "1".repeat(length), builder.length()));
+            builder.append(expected.get(expected.size() - 1).getLiteral()).append("\b");
+        }
+        String input = builder.toString();
+        test(input, expected);
+        test(new ByteSequence(ByteBuffer.wrap(input.getBytes(StandardCharsets.US_ASCII))), expected);
+    }
+
+    @Test
+    void testParallel() {
+        StringBuilder builder = new StringBuilder();
+        for (int i = 0; i < 20000; i++) {
+            builder.append("LET name").append(i).append(" = \"value\\n\" + ").append(i).append(".5;\n");
+        }
+        String input = builder.toString();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Assertions.assertEquals(new Lexer(input).lex(), Lexer.lexParallel(input, pool).asList());
+            String invalid = input.substring(0, input.length() / 2) + "\"unterminated\n" + input.substring(input.length() / 2) + "#";
+            ParseException expected = Assertions.assertThrows(ParseException.class, () -> new Lexer(invalid).lex());
+            ParseException actual = Assertions.assertThrows(ParseException.class, () -> Lexer.lexParallel(invalid, pool));
+            Assertions.assertEquals(expected.getMessage(), actual.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @ParameterizedTest
+    @MethodSource
+    void testRelex(String test, String input, int offset, int removed, String text) {
+        TokenBuffer previous = new Lexer(input).lexCompact();
+        String updated = input.substring(0, offset) + text + input.substring(offset + removed);
+        try {
+            List<Token> expected = new Lexer(updated).lex();
+            Assertions.assertEquals(expected, Lexer.relex(previous, offset, removed, text).asList());
+        } catch (ParseException expected) {
+            ParseException actual = Assertions.assertThrows(ParseException.class, () -> Lexer.relex(previous, offset, removed, text));
+            Assertions.assertEquals(expected.getIndex(), actual.getIndex());
+        }
+    }
+
+    private static Stream<Arguments> testRelex() {
+        String input = "LET x = 1;\nLET y = \"two\";\nprint(x - y);\n";
+        return Stream.of(
+                Arguments.of("Extend Identifier", input, 5, 0, "z"),
+                Arguments.of("Join Sign", input, 33, 1, ""),
+                Arguments.of("Split Token", input, 24, 0, " "),
+                Arguments.of("Replace Line", input, 11, 15, "DEF main() DO END"),
+                Arguments.of("Open String", input, 33, 0, "\""),
+                Arguments.of("Break String", input, 21, 0, "\n"),
+                Arguments.of("Append", input, input.length(), 0, "x;"),
+                Arguments.of("Delete All", input, 0, input.length(), "")
+        );
+    }
+
+    @Test
+    void testRecovering() {
+        String input = "LET a = 01;\nLET b = \"bad\\q\";\nLET c # 'x';\nLET d = \"open\nLET e;";
+        List<ParseException> errors = new ArrayList<>();
+        List<Token> tokens = new Lexer(input).lexRecovering(errors).asList();
+        Assertions.assertEquals(Arrays.asList(9, 25, 35, 55), errors.stream().map(ParseException::getIndex).collect(Collectors.toList()));
+        Assertions.assertEquals(Arrays.asList(
+                new Token(Token.Type.ERROR, "01", 8),
+                new Token(Token.Type.ERROR, "\"bad\\q\"", 20),
+                new Token(Token.Type.ERROR, "#", 35),
+                new Token(Token.Type.ERROR, "\"open", 50)
+        ), tokens.stream().filter(token -> token.getType() == Token.Type.ERROR).collect(Collectors.toList()));
+        Assertions.assertEquals(new Token(Token.Type.IDENTIFIER, "e", 60), tokens.get(tokens.size() - 2));
+    }
+
+    private static void test(CharSequence input, List<Token> expected) {
+        Assertions.assertEquals(expected, new Lexer(input).lex());
+        Assertions.assertEquals(expected, new Lexer(input).lexCompact().asList());
+    }
+
+}
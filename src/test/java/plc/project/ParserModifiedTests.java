@@ -8,10 +8,16 @@ import org.junit.jupiter.params.provider.MethodSource;
 
 import java.math.BigDecimal;
 import java.math.BigInteger;
+import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Optional;
+import java.util.Set;
+import java.util.concurrent.ForkJoinPool;
 import java.util.function.Function;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
 import java.util.stream.Stream;
 
 /**
@@ -399,6 +405,50 @@ final class ParserModifiedTests {
                                 new Ast.Expression.Access(Optional.empty(), "expr1"),
                                 new Ast.Expression.Access(Optional.empty(), "expr2")
                         )
+                ),
+                Arguments.of("Binary Precedence",
+                        Arrays.asList(
+                                //a - b - c * d < e
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "-", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 4),
+                                new Token(Token.Type.OPERATOR, "-", 6),
+                                new Token(Token.Type.IDENTIFIER, "c", 8),
+                                new Token(Token.Type.OPERATOR, "*", 10),
+                                new Token(Token.Type.IDENTIFIER, "d", 12),
+                                new Token(Token.Type.OPERATOR, "<", 14),
+                                new Token(Token.Type.IDENTIFIER, "e", 16)
+                        ),
+                        new Ast.Expression.Binary("<",
+                                new Ast.Expression.Binary("-",
+                                        new Ast.Expression.Binary("-",
+                                                new Ast.Expression.Access(Optional.empty(), "a"),
+                                                new Ast.Expression.Access(Optional.empty(), "b")
+                                        ),
+                                        new Ast.Expression.Binary("*",
+                                                new Ast.Expression.Access(Optional.empty(), "c"),
+                                                new Ast.Expression.Access(Optional.empty(), "d")
+                                        )
+                                ),
+                                new Ast.Expression.Access(Optional.empty(), "e")
+                        )
+                ),
+                Arguments.of("Binary Logical Chain",
+                        Arrays.asList(
+                                //a || b && c
+                                new Token(Token.Type.IDENTIFIER, "a", 0),
+                                new Token(Token.Type.OPERATOR, "||", 2),
+                                new Token(Token.Type.IDENTIFIER, "b", 5),
+                                new Token(Token.Type.OPERATOR, "&&", 7),
+                                new Token(Token.Type.IDENTIFIER, "c", 10)
+                        ),
+                        new Ast.Expression.Binary("&&",
+                                new Ast.Expression.Binary("||",
+                                        new Ast.Expression.Access(Optional.empty(), "a"),
+                                        new Ast.Expression.Access(Optional.empty(), "b")
+                                ),
+                                new Ast.Expression.Access(Optional.empty(), "c")
+                        )
                 )
         );
     }
@@ -555,6 +605,417 @@ final class ParserModifiedTests {
         test(input, expected, Parser::parseSource);
     }
 
+    @Test
+    void testTokenSource() {
+        String input = "LET first = 1;\n" +
+                "DEF main() DO\n" +
+                "    WHILE first != 10 DO\n" +
+                "        print(first.stringify());\n" +
+                "        first = (first + 1) * 2 - 1;\n" +
+                "    END\n" +
+                "END";
+        Ast.Source expected = new Parser(new Lexer(input).lex()).parseSource();
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).tokens()).parseSource());
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexCompact()).parseSource());
+    }
+
+    @Test
+    void testRecovering() {
+        String input = "LET a = ;\nLET b = 1;\nDEF f() DO\n    x = (1 + ;\n    y = 2;\n    IF z DO\n        w = ;\n    END\nEND\n"
+                + "junk\nDEF g() DO\n    RETURN 1;\n";
+        List<ParseException> errors = new ArrayList<>();
+        Ast.Source source = new Parser(new Lexer(input).lexCompact()).parseRecovering(errors);
+        Assertions.assertEquals(Arrays.asList(8, 45, 82, 96, -1), errors.stream().map(ParseException::getIndex).collect(Collectors.toList()));
+        Assertions.assertEquals(0, errors.get(0).getStackTrace().length);
+        Assertions.assertEquals(new Ast.Source(
+                Arrays.asList(new Ast.Field("b", false, Optional.of(new Ast.Expression.Literal(BigInteger.ONE)))),
+                Arrays.asList(
+                        new Ast.Method("f", Arrays.asList(), Arrays.asList(
+                                new Ast.Statement.Assignment(
+                                        new Ast.Expression.Access(Optional.empty(), "y"),
+                                        new Ast.Expression.Literal(BigInteger.valueOf(2))
+                                ),
+                                new Ast.Statement.If(new Ast.Expression.Access(Optional.empty(), "z"), Arrays.asList(), Arrays.asList())
+                        )),
+                        new Ast.Method("g", Arrays.asList(), Arrays.asList(
+                                new Ast.Statement.Return(new Ast.Expression.Literal(BigInteger.ONE))
+                        ))
+                )
+        ), source);
+    }
+
+    @Test
+    void testNumberValues() {
+        String input = "f(7, -0.50, 123456789012345678901, 1.000000000000000000001, 999999999999999999)";
+        Ast.Expression.Function expected = new Ast.Expression.Function(Optional.empty(), "f", Arrays.asList(
+                new Ast.Expression.Literal(BigInteger.valueOf(7)),
+                new Ast.Expression.Literal(new BigDecimal("-0.50")),
+                new Ast.Expression.Literal(new BigInteger("123456789012345678901")),
+                new Ast.Expression.Literal(new BigDecimal("1.000000000000000000001")),
+                new Ast.Expression.Literal(new BigInteger("999999999999999999"))
+        ));
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lex()).parseExpression());
+        Assertions.assertEquals(expected, new Parser(new Lexer(input).lexCompact()).parseExpression());
+    }
+
+    @Test
+    void testConstants() {
+        String input = "f(\"a\\\\nb\\tc\", \"a\\\\nb\\tc\", 'x', \"x\", 1.0, 1.00, 1.0, NIL, NIL)";
+        SymbolTable symbols = new SymbolTable();
+        Ast.Expression.Function call = (Ast.Expression.Function) new Parser(new Lexer(input, symbols).lexCompact()).parseExpression();
+        List<Ast.Expression.Literal> literals = call.getArguments().stream()
+                .map(Ast.Expression.Literal.class::cast)
+                .collect(Collectors.toList());
+        Assertions.assertEquals("a\\nb\tc", literals.get(0).getLiteral());
+        Assertions.assertSame(literals.get(0).getLiteral(), literals.get(1).getLiteral());
+        Assertions.assertSame(literals.get(0).getObject(), literals.get(1).getObject());
+        Assertions.assertNotSame(literals.get(2).getObject(), literals.get(3).getObject());
+        Assertions.assertNotSame(literals.get(4).getObject(), literals.get(5).getObject());
+        Assertions.assertSame(literals.get(4).getObject(), literals.get(6).getObject());
+        Assertions.assertNull(literals.get(7).getLiteral());
+        Assertions.assertSame(Environment.NIL, literals.get(8).getObject());
+        Assertions.assertEquals(5, symbols.getConstants().size());
+    }
+
+    @Test
+    void testFlat() {
+        String input = "LET x = 1;\nLET CONST y: Integer;\n" +
+                "DEF main() DO\n" +
+                "    LET z: String = \"z\";\n" +
+                "    IF x < 2 DO\n        x = (x + 1) * 2;\n    ELSE\n        RETURN NIL;\n    END\n" +
+                "    FOR (i = 0; i < x; i = i + 1)\n        print(z.f(i), 1);\n    END\n" +
+                "    WHILE TRUE DO x.y = 'c'; END\n" +
+                "    FOR (; ; i = i + 1)\n        RETURN i;\n    END\n" +
+                "END\n" +
+                "DEF f(a, b) DO\n    RETURN a;\nEND";
+        Ast.Source source = new Parser(new Lexer(input).lexCompact()).parseSource();
+        FlatAst flat = FlatAst.of(source);
+        Assertions.assertEquals(source, flat.toAst());
+        Assertions.assertEquals(FlatAst.Kind.SOURCE, flat.getKind(0));
+        Assertions.assertEquals(4, flat.getChildCount(0));
+
+        int main = flat.getChild(0, 2);
+        Assertions.assertEquals(FlatAst.Kind.METHOD, flat.getKind(main));
+        Assertions.assertEquals("main", flat.getValueOf(main));
+        int loop = flat.getChild(main, 2);
+        Assertions.assertEquals(FlatAst.Kind.FOR, flat.getKind(loop));
+        Assertions.assertEquals(source.getMethods().get(0).getStatements().get(2), flat.materialize(loop));
+        Assertions.assertEquals(FlatAst.NONE, flat.getChild(flat.getChild(0, 1), 0));
+        int endless = flat.getChild(main, 4);
+        Assertions.assertEquals(FlatAst.NONE, flat.getChild(endless, 0));
+        Assertions.assertEquals(FlatAst.NONE, flat.getChild(endless, 1));
+
+        // Each name is stored once, wherever it is used.
+        long names = IntStream.range(0, flat.size())
+                .filter(node -> flat.getKind(node) == FlatAst.Kind.ACCESS && flat.getValueOf(node).equals("x"))
+                .map(flat::getOperand)
+                .distinct()
+                .count();
+        Assertions.assertEquals(1, names);
+    }
+
+    @Test
+    void testInterning() {
+        String input = "DEF main() DO\n" +
+                "    x = f(a + 1, b) * (a + 1);\n" +
+                "    IF f(a + 1, b) DO\n        RETURN a + 1;\n    END\n" +
+                "    FOR (; ; x = a + 1)\n        b = b;\n    END\n" +
+                "END";
+        Ast.Source source = new Parser(new Lexer(input).lexCompact()).parseSource();
+        ExpressionPool pool = new ExpressionPool();
+        Ast.Source interned = pool.intern(source);
+        Assertions.assertEquals(source, interned);
+        Assertions.assertEquals(source.hashCode(), interned.hashCode());
+
+        List<Ast.Statement> statements = interned.getMethods().get(0).getStatements();
+        Ast.Expression.Binary product = (Ast.Expression.Binary) ((Ast.Statement.Assignment) statements.get(0)).getValue();
+        Ast.Expression.Function call = (Ast.Expression.Function) product.getLeft();
+        Ast.Statement.If statement = (Ast.Statement.If) statements.get(1);
+        Assertions.assertSame(call, statement.getCondition());
+        Assertions.assertSame(call.getArguments().get(0), ((Ast.Expression.Group) product.getRight()).getExpression());
+        Assertions.assertSame(call.getArguments().get(0), ((Ast.Statement.Return) statement.getThenStatements().get(0)).getValue());
+        Ast.Statement.For loop = (Ast.Statement.For) statements.get(2);
+        Assertions.assertNull(loop.getCondition());
+        Assertions.assertSame(call.getArguments().get(0), ((Ast.Statement.Assignment) loop.getIncrement()).getValue());
+        // x, f(a + 1, b), a + 1, a, 1, b, (a + 1) and the product.
+        Assertions.assertEquals(8, pool.size());
+
+        Ast.Expression built = pool.binary("+", new Ast.Expression.Access(Optional.empty(), "a"), pool.literal(BigInteger.ONE));
+        Assertions.assertSame(call.getArguments().get(0), built);
+        Assertions.assertEquals(new Ast.Expression.Literal(BigInteger.ONE).hashCode(), pool.literal(BigInteger.ONE).hashCode());
+        Assertions.assertNotEquals(built, pool.binary("-", built, pool.literal(BigInteger.ONE)));
+
+        // The given tree is copied, and the shared nodes cannot be analyzed.
+        Ast.Expression original = ((Ast.Statement.Assignment) source.getMethods().get(0).getStatements().get(0)).getValue();
+        Assertions.assertFalse(original.isShared());
+        Assertions.assertTrue(product.isShared());
+        Assertions.assertSame(product, pool.intern(product));
+        Assertions.assertThrows(IllegalStateException.class, () -> product.setType(Environment.Type.INTEGER));
+        Assertions.assertThrows(IllegalStateException.class, () -> call.setFunction(null));
+        ((Ast.Expression.Binary) original).setType(Environment.Type.INTEGER);
+
+        List<Ast.Expression> arguments = new ArrayList<>(Arrays.asList(built));
+        Ast.Expression.Function function = new Ast.Expression.Function(Optional.empty(), "g", arguments);
+        int hash = function.hashCode();
+        arguments.add(built);
+        Assertions.assertEquals(hash, function.hashCode());
+        Assertions.assertEquals(1, function.getArguments().size());
+        Assertions.assertThrows(UnsupportedOperationException.class, () -> function.getArguments().add(built));
+    }
+
+    @Test
+    void testSymbols() {
+        String input = "LET first = 1;\nDEF main() DO\n    first = first;\nEND";
+        SymbolTable symbols = new SymbolTable();
+        Ast.Source source = new Parser(new Lexer(input, symbols).lexCompact()).parseSource();
+        Ast.Statement.Assignment statement = (Ast.Statement.Assignment) source.getMethods().get(0).getStatements().get(0);
+        String field = source.getFields().get(0).getName();
+        Assertions.assertSame(field, ((Ast.Expression.Access) statement.getReceiver()).getName());
+        Assertions.assertSame(field, ((Ast.Expression.Access) statement.getValue()).getName());
+        Assertions.assertSame(field, symbols.intern("first"));
+        Assertions.assertSame(symbols.symbol(symbols.id("main")), source.getMethods().get(0).getName());
+    }
+
+    @Test
+    void testReparse() {
+        String input = "LET x = 1;\nDEF a() DO\n    x = 1;\nEND\nDEF b() DO\n    x = 2;\nEND\nDEF c() DO\nEND";
+        ParsedSource before = ParsedSource.parse(new Lexer(input).lexCompact());
+        Ast.Source previous = before.getAst();
+
+        // Inside method b, so only b is parsed again.
+        ParsedSource after = before.edit(input.indexOf("2;"), 1, "x + 3");
+        Ast.Source source = after.getAst();
+        Assertions.assertEquals(new Parser(new Lexer(after.getTokens().getSource()).lexCompact()).parseSource(), source);
+        Assertions.assertSame(previous.getFields().get(0), source.getFields().get(0));
+        Assertions.assertSame(previous.getMethods().get(0), source.getMethods().get(0));
+        Assertions.assertNotSame(previous.getMethods().get(1), source.getMethods().get(1));
+        Assertions.assertSame(previous.getMethods().get(2), source.getMethods().get(2));
+
+        // Ends method b early, so the whole source is parsed again.
+        String text = after.getTokens().getSource().toString();
+        ParsedSource split = after.edit(text.indexOf("x = x + 3"), 0, "END\nDEF d() DO\n");
+        Assertions.assertEquals(4, split.getAst().getMethods().size());
+        Assertions.assertEquals(new Parser(new Lexer(split.getTokens().getSource()).lexCompact()).parseSource(), split.getAst());
+
+        // A broken method reports the same error as a full parse.
+        String broken = text.replace("x + 3", "(x + 3");
+        ParseException expected = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(broken).lexCompact()).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class,
+                () -> after.edit(text.indexOf("x + 3"), 0, "("));
+        Assertions.assertEquals(expected.getMessage(), exception.getMessage());
+    }
+
+    @Test
+    void testParallel() {
+        StringBuilder builder = new StringBuilder("LET x = 1;\n");
+        for (int i = 0; i < 4000; i++) {
+            builder.append("DEF m").append(i % 100).append("(a) DO\n");
+            // A keyword used as a name throws off the scan for method ends.
+            builder.append(i == 1234 ? "    x = END;\n" : "    x = a + 1;\n");
+            builder.append("    FOR (i = 0; i < a; i = i + 1)\n        WHILE x DO x = x - 1; END\n    END\nEND\n");
+        }
+        String input = builder.toString();
+        ForkJoinPool pool = new ForkJoinPool(4);
+        try {
+            Ast.Source expected = new Parser(new Lexer(input).lexCompact()).parseSource();
+            TokenBuffer tokens = new Lexer(input).lexCompact();
+            Ast.Source source = Parser.parseParallel(tokens, pool);
+            Assertions.assertEquals(expected, source);
+            Assertions.assertSame(tokens.getSymbols().intern("m42"), source.getMethods().get(3042).getName());
+
+            String broken = input.replace("DEF m99(a) DO\n    x = a + 1;", "DEF m99(a) DO\n    x = a +;");
+            ParseException error = Assertions.assertThrows(ParseException.class,
+                    () -> new Parser(new Lexer(broken).lexCompact()).parseSource());
+            ParseException exception = Assertions.assertThrows(ParseException.class,
+                    () -> Parser.parseParallel(new Lexer(broken).lexCompact(), pool));
+            Assertions.assertEquals(error.getMessage(), exception.getMessage());
+        } finally {
+            pool.shutdown();
+        }
+    }
+
+    @Test
+    void testVisitorDispatch() {
+        Ast.Expression expression = new Ast.Expression.Literal(BigInteger.ONE);
+        Ast.Statement statement = new Ast.Statement.Return(expression);
+        List<Ast> nodes = Arrays.asList(
+                new Ast.Source(List.of(), List.of()),
+                new Ast.Field("x", false, Optional.empty()),
+                new Ast.Method("f", List.of(), List.of()),
+                new Ast.Statement.Expression(expression),
+                new Ast.Statement.Declaration("x", Optional.empty()),
+                new Ast.Statement.Assignment(expression, expression),
+                new Ast.Statement.If(expression, List.of(statement), List.of()),
+                new Ast.Statement.For(null, expression, null, List.of(statement)),
+                new Ast.Statement.While(expression, List.of(statement)),
+                statement,
+                expression,
+                new Ast.Expression.Group(expression),
+                new Ast.Expression.Binary("+", expression, expression),
+                new Ast.Expression.Access(Optional.empty(), "x"),
+                new Ast.Expression.Function(Optional.empty(), "f", List.of(expression))
+        );
+        Ast.Visitor<Class<?>> visitor = new Ast.Visitor<>() {
+
+            @Override
+            public Class<?> visit(Ast.Source ast) {
+                return Ast.Source.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Field ast) {
+                return Ast.Field.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Method ast) {
+                return Ast.Method.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Statement.Expression ast) {
+                return Ast.Statement.Expression.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Statement.Declaration ast) {
+                return Ast.Statement.Declaration.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Statement.Assignment ast) {
+                return Ast.Statement.Assignment.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Statement.If ast) {
+                return Ast.Statement.If.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Statement.For ast) {
+                return Ast.Statement.For.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Statement.While ast) {
+                return Ast.Statement.While.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Statement.Return ast) {
+                return Ast.Statement.Return.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Expression.Literal ast) {
+                return Ast.Expression.Literal.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Expression.Group ast) {
+                return Ast.Expression.Group.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Expression.Binary ast) {
+                return Ast.Expression.Binary.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Expression.Access ast) {
+                return Ast.Expression.Access.class;
+            }
+
+            @Override
+            public Class<?> visit(Ast.Expression.Function ast) {
+                return Ast.Expression.Function.class;
+            }
+
+        };
+        // One node of every concrete class, each dispatched to its own overload.
+        Assertions.assertEquals(FlatAst.Kind.values().length, nodes.stream().map(Object::getClass).distinct().count());
+        for (Ast node : nodes) {
+            Assertions.assertEquals(node.getClass(), visitor.visit(node));
+            Assertions.assertEquals(node.getClass(), node.accept(visitor));
+        }
+    }
+
+    @Test
+    void testLazy() {
+        String input = "LET x = 1;\n" +
+                "DEF a(y) DO\n" +
+                "    IF y DO\n        x = 1;\n    ELSE\n        WHILE x DO x = x - 1; END\n    END\n" +
+                "    FOR (i = 0; i < (y); i = i + 1)\n        DO = END;\n    END\n" +
+                "    RETURN IF;\n" +
+                "END\n" +
+                "DEF b() DO\n    x = 1 + ;\nEND\n" +
+                "DEF c() DO\nEND";
+        TokenBuffer tokens = new Lexer(input).lexCompact();
+        Ast.Source source = Parser.parseLazily(tokens);
+        Assertions.assertEquals(3, source.getMethods().size());
+        Assertions.assertEquals("c", source.getMethods().get(2).getName());
+        // A lazy method equals the same method parsed eagerly, and hashes
+        // the same before and after its body is parsed.
+        Ast.Method eager = new Parser(new Lexer(input.replace("1 + ;", "1;")).lexCompact()).parseSource().getMethods().get(0);
+        Ast.Method lazy = Parser.parseLazily(tokens).getMethods().get(0);
+        Assertions.assertTrue(lazy.toString().contains("statements=unparsed tokens ["), lazy.toString());
+        Set<Ast.Method> set = new HashSet<>(List.of(source.getMethods().get(0)));
+        Assertions.assertEquals(eager, source.getMethods().get(0));
+        Assertions.assertTrue(set.contains(source.getMethods().get(0)));
+        Assertions.assertTrue(set.contains(lazy));
+        Assertions.assertEquals(eager.hashCode(), lazy.hashCode());
+
+        // A broken body is printed without parsing it.
+        Ast.Method broken = source.getMethods().get(1);
+        Assertions.assertTrue(broken.toString().contains("statements=unparsed tokens ["), broken.toString());
+
+        // It only fails when it is used, and every time it is.
+        ParseException error = Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(input).lexCompact()).parseSource());
+        ParseException exception = Assertions.assertThrows(ParseException.class, broken::getStatements);
+        Assertions.assertEquals(error.getMessage(), exception.getMessage());
+        Assertions.assertEquals(error.getIndex(), exception.getIndex());
+        Assertions.assertThrows(ParseException.class, broken::getStatements);
+        Assertions.assertEquals(List.of(), source.getMethods().get(2).getStatements());
+    }
+
+    @Test
+    void testDeepNesting() {
+        int depth = 100_000;
+        String expression = "(".repeat(depth) + "x" + ")".repeat(depth)
+                + " + " + "f(".repeat(depth) + "1" + ")".repeat(depth);
+        Ast.Expression expr = new Parser(new Lexer(expression).lexCompact()).parseExpression();
+        Assertions.assertTrue(expr instanceof Ast.Expression.Binary);
+
+        String statement = "IF x DO\n".repeat(depth) + "y = 1;\n" + "END\n".repeat(depth);
+        Ast.Statement stmt = new Parser(new Lexer(statement).lexCompact()).parseStatement();
+        Assertions.assertTrue(stmt instanceof Ast.Statement.If);
+
+        String broken = "IF x DO\n".repeat(depth) + "y = ;\n" + "END\n".repeat(depth);
+        Assertions.assertThrows(ParseException.class,
+                () -> new Parser(new Lexer(broken).lexCompact()).parseStatement());
+
+        String program = "DEF main() DO\n" + "IF x DO\n".repeat(depth) + "y = " + expression + ";\n"
+                + "END\n".repeat(depth) + "END";
+        Ast.Source source = new Parser(new Lexer(program).lexCompact()).parseSource();
+        FlatAst flat = FlatAst.of(source);
+        FlatAst again = FlatAst.of(flat.toAst());
+        Assertions.assertEquals(flat.size(), again.size());
+        for (int node = 0; node < flat.size(); node++) {
+            Assertions.assertEquals(flat.getKind(node), again.getKind(node));
+            Assertions.assertEquals(flat.getValueOf(node), again.getValueOf(node));
+        }
+
+        // x, the groups, 1, the calls, the sum and y.
+        ExpressionPool pool = new ExpressionPool();
+        FlatAst interned = FlatAst.of(pool.intern(source));
+        Assertions.assertEquals(2 * depth + 4, pool.size());
+        Assertions.assertEquals(flat.size(), interned.size());
+        Assertions.assertSame(pool.intern(expr), pool.intern(expr));
+    }
+
     /**
      * Standard test function. If expected is null, a ParseException is expected
      * to be thrown (not used in the provided tests).
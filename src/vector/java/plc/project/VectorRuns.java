@@ -0,0 +1,89 @@
+package plc.project;
+
+import jdk.incubator.vector.ByteVector;
+import jdk.incubator.vector.VectorMask;
+import jdk.incubator.vector.VectorOperators;
+import jdk.incubator.vector.VectorSpecies;
+
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Finds the end of a run of whitespace, identifier characters or digits in a
+ * byte buffer a whole vector (16 to 64 bytes, depending on the hardware) at a
+ * time using the incubating Vector API.
+ *
+ * This class is only loaded by the {@link Lexer} when the
+ * {@code jdk.incubator.vector} module is enabled, e.g. with
+ * {@code --add-modules jdk.incubator.vector}. Each method stops at the first
+ * byte outside of the run, or where less than a vector is left, and returns
+ * that position; the lexer finishes the tail one char at a time.
+ */
+final class VectorRuns {
+
+    private static final VectorSpecies<Byte> SPECIES = ByteVector.SPECIES_PREFERRED;
+
+    private VectorRuns() {}
+
+    /**
+     * Matches {@code [ \b\t\n\r]}.
+     */
+    static int whitespace(ByteBuffer buffer, int from, int to) {
+        for (; from + SPECIES.length() <= to; from += SPECIES.length()) {
+            ByteVector bytes = load(buffer, from);
+            VectorMask<Byte> outside = bytes.eq((byte) ' ')
+                    .or(bytes.eq((byte) '\b'))
+                    .or(bytes.eq((byte) '\t'))
+                    .or(bytes.eq((byte) '\n'))
+                    .or(bytes.eq((byte) '\r'))
+                    .not();
+            if (outside.anyTrue()) {
+                return from + outside.firstTrue();
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Matches {@code [A-Za-z0-9_-]}. Bytes of non-ASCII chars are negative,
+     * so they fail every range check.
+     */
+    static int identifier(ByteBuffer buffer, int from, int to) {
+        for (; from + SPECIES.length() <= to; from += SPECIES.length()) {
+            ByteVector bytes = load(buffer, from);
+            ByteVector lower = bytes.or((byte) 0x20);
+            VectorMask<Byte> outside = lower.compare(VectorOperators.GE, (byte) 'a')
+                    .and(lower.compare(VectorOperators.LE, (byte) 'z'))
+                    .or(digit(bytes))
+                    .or(bytes.eq((byte) '_'))
+                    .or(bytes.eq((byte) '-'))
+                    .not();
+            if (outside.anyTrue()) {
+                return from + outside.firstTrue();
+            }
+        }
+        return from;
+    }
+
+    /**
+     * Matches {@code [0-9]}.
+     */
+    static int digits(ByteBuffer buffer, int from, int to) {
+        for (; from + SPECIES.length() <= to; from += SPECIES.length()) {
+            VectorMask<Byte> outside = digit(load(buffer, from)).not();
+            if (outside.anyTrue()) {
+                return from + outside.firstTrue();
+            }
+        }
+        return from;
+    }
+
+    private static ByteVector load(ByteBuffer buffer, int offset) {
+        return ByteVector.fromByteBuffer(SPECIES, buffer, offset, ByteOrder.nativeOrder());
+    }
+
+    private static VectorMask<Byte> digit(ByteVector bytes) {
+        return bytes.compare(VectorOperators.GE, (byte) '0').and(bytes.compare(VectorOperators.LE, (byte) '9'));
+    }
+
+}